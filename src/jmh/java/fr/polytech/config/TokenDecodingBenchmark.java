@@ -0,0 +1,74 @@
+package fr.polytech.config;
+
+import com.auth0.jwt.JWT;
+import fr.polytech.service.DecodedTokenCache;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Work done on the JWT of every authenticated request: the conversion into an authentication token and the
+ * subject check of the security methods, with the decoded token cache, against a plain decoding of the token.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenDecodingBenchmark {
+
+    private JwtAuthConverter jwtAuthConverter;
+    private SecurityMethodConfig.SecurityMethods securityMethods;
+    private Jwt jwt;
+    private String bearerToken;
+    private String userId;
+
+    @Setup
+    public void setup() {
+        userId = UUID.randomUUID().toString();
+        Instant expiresAt = Instant.now().plusSeconds(3600);
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String header = encoder.encodeToString("{\"alg\":\"none\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+        String payload = encoder.encodeToString(("{\"sub\":\"" + userId + "\",\"exp\":" + expiresAt.getEpochSecond()
+                + ",\"scope\":\"openid profile email\"}").getBytes(StandardCharsets.UTF_8));
+        String token = header + "." + payload + ".";
+
+        jwt = Jwt.withTokenValue(token)
+                .header("alg", "none")
+                .subject(userId)
+                .expiresAt(expiresAt)
+                .claim("scope", "openid profile email")
+                .claim("resource_access", Map.of("notification", Map.of("roles", List.of("client_user", "client_admin"))))
+                .build();
+        bearerToken = "Bearer " + token;
+
+        DecodedTokenCache decodedTokenCache = new DecodedTokenCache(10_000, 300_000);
+        jwtAuthConverter = new JwtAuthConverter(decodedTokenCache);
+        securityMethods = new SecurityMethodConfig.SecurityMethods(decodedTokenCache);
+        jwtAuthConverter.convert(jwt);
+    }
+
+    @Benchmark
+    public AbstractAuthenticationToken convert() {
+        return jwtAuthConverter.convert(jwt);
+    }
+
+    @Benchmark
+    public boolean isSender() {
+        return securityMethods.isSender(userId, bearerToken);
+    }
+
+    @Benchmark
+    public boolean isSenderWithoutCache() {
+        return JWT.decode(bearerToken.replace("Bearer ", "")).getSubject().equals(userId);
+    }
+}
@@ -0,0 +1,260 @@
+package fr.polytech.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.polytech.service.KafkaService;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of the SSE endpoints of a running instance, used to compare the platform thread and the virtual
+ * thread modes: start the service once with each value of "notification.virtual-threads.enabled" and run
+ * the test against it with the same parameters.
+ * <p>
+ * Each simulated client asks for a subscribe token with the JWT of the user, then opens an SSE stream with it.
+ * The latency of a client is the time from the token request to the "connected" event. The test reports how many
+ * streams were opened and are still open after the hold time, and the latency percentiles.
+ * <p>
+ * The test also measures the connection capacity of the servlet and the "reactive" profiles: it reads the heap
+ * used by the service from the actuator before connecting and at the end of the hold time, and reports the number
+ * of connections per GB of heap. The clients are idle by default; with "loadtest.notifications-per-second" set,
+ * offer records for the user are produced to Kafka during the hold time, so every stream receives events.
+ * <p>
+ * Parameters, as system properties:
+ * "loadtest.url" (http://localhost:8080), "loadtest.user-id", "loadtest.jwt", "loadtest.connections" (5000),
+ * "loadtest.parallelism" (200 clients connecting at the same time), "loadtest.hold-seconds" (30),
+ * "loadtest.notifications-per-second" (0, idle clients) and "loadtest.kafka.bootstrap-servers" (localhost:9092).
+ */
+public class SseLoadTest {
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final String url;
+    private final String userId;
+    private final String jwt;
+    private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicLong received = new AtomicLong();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private SseLoadTest(String url, String userId, String jwt) {
+        this.url = url;
+        this.userId = userId;
+        this.jwt = jwt;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String url = System.getProperty("loadtest.url", "http://localhost:8080");
+        String userId = required("loadtest.user-id");
+        String jwt = required("loadtest.jwt");
+        int connections = Integer.getInteger("loadtest.connections", 5000);
+        int parallelism = Integer.getInteger("loadtest.parallelism", 200);
+        int holdSeconds = Integer.getInteger("loadtest.hold-seconds", 30);
+        int notificationsPerSecond = Integer.getInteger("loadtest.notifications-per-second", 0);
+        String bootstrapServers = System.getProperty("loadtest.kafka.bootstrap-servers", "localhost:9092");
+
+        SseLoadTest loadTest = new SseLoadTest(url, userId, jwt);
+        long heapBefore = loadTest.heapUsed();
+        long start = System.nanoTime();
+        Semaphore connecting = new Semaphore(parallelism);
+        for (int client = 0; client < connections; client++) {
+            connecting.acquire();
+            loadTest.connect().whenComplete((ignored, throwable) -> connecting.release());
+        }
+        connecting.acquire(parallelism);
+        long rampMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        if (notificationsPerSecond > 0) {
+            loadTest.produceNotifications(bootstrapServers, notificationsPerSecond, holdSeconds);
+        } else {
+            TimeUnit.SECONDS.sleep(holdSeconds);
+        }
+        long heapAfter = loadTest.heapUsed();
+        loadTest.report(connections, rampMillis, holdSeconds, heapBefore, heapAfter);
+        System.exit(0);
+    }
+
+    private static String required(String property) {
+        String value = System.getProperty(property);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing system property " + property);
+        }
+        return value;
+    }
+
+    /**
+     * Heap used by the service, from the "jvm.memory.used" metric of the actuator.
+     *
+     * @return The heap used in bytes, -1 if the metric is not available.
+     */
+    private long heapUsed() {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/actuator/metrics/jvm.memory.used?tag=area:heap"))
+                .header("Authorization", "Bearer " + jwt)
+                .GET()
+                .build();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                return -1;
+            }
+            JsonNode measurements = objectMapper.readTree(response.body()).path("measurements");
+            return measurements.isEmpty() ? -1 : measurements.get(0).path("value").asLong();
+        } catch (IOException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    /**
+     * Produce offer records for the user during the hold time, so that every open stream receives events.
+     *
+     * @param bootstrapServers The Kafka bootstrap servers.
+     * @param perSecond        The number of records per second.
+     * @param holdSeconds      The hold time, in seconds.
+     * @throws InterruptedException If interrupted while waiting for the end of the hold time.
+     */
+    private void produceNotifications(String bootstrapServers, int perSecond, int holdSeconds) throws InterruptedException {
+        Map<String, Object> properties = Map.of(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try (KafkaProducer<String, String> producer = new KafkaProducer<>(properties, new StringSerializer(), new StringSerializer())) {
+            scheduler.scheduleAtFixedRate(() -> {
+                String json = "{\"receiverId\":\"" + userId + "\",\"objectId\":\"" + UUID.randomUUID()
+                        + "\",\"category\":\"OFFER\",\"message\":\"Load test notification\"}";
+                ProducerRecord<String, String> record = new ProducerRecord<>(KafkaService.OFFER_TOPIC, json);
+                record.headers().add("event-id", UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+                producer.send(record);
+            }, 0, Math.max(1, 1_000_000 / perSecond), TimeUnit.MICROSECONDS);
+            TimeUnit.SECONDS.sleep(holdSeconds);
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Connect one client: request a subscribe token, then open the stream and wait for the "connected" event.
+     *
+     * @return A future completing when the client is connected or has failed.
+     */
+    private CompletableFuture<Void> connect() {
+        long start = System.nanoTime();
+        HttpRequest proxy = HttpRequest.newBuilder(URI.create(url + "/api/v1/notification/sse/proxy/" + userId))
+                .header("Authorization", "Bearer " + jwt)
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return httpClient.sendAsync(proxy, HttpResponse.BodyHandlers.ofString())
+                .thenCompose(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("Subscribe token request failed with status " + response.statusCode());
+                    }
+                    return subscribe(response.body(), start);
+                })
+                .exceptionally(throwable -> {
+                    failures.incrementAndGet();
+                    return null;
+                });
+    }
+
+    /**
+     * Open the SSE stream of a subscribe token.
+     *
+     * @param token The subscribe token.
+     * @param start The start of the connection of the client, in nanoseconds.
+     * @return A future completing when the "connected" event is received.
+     */
+    private CompletableFuture<Void> subscribe(String token, long start) {
+        CompletableFuture<Void> connected = new CompletableFuture<>();
+        HttpRequest subscribe = HttpRequest.newBuilder(URI.create(url + "/api/v1/notification/sse/subscribe/" + token))
+                .header("Accept", "text/event-stream")
+                .GET()
+                .build();
+        httpClient.sendAsync(subscribe, HttpResponse.BodyHandlers.fromLineSubscriber(new Flow.Subscriber<String>() {
+            private boolean counted;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String line) {
+                if (!counted && line.startsWith("event:") && line.substring(6).trim().equals("connected")) {
+                    counted = true;
+                    latencies.add(System.nanoTime() - start);
+                    open.incrementAndGet();
+                    connected.complete(null);
+                } else if (counted && line.startsWith("id:")) {
+                    received.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                onClosed();
+                connected.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                onClosed();
+                connected.completeExceptionally(new IllegalStateException("Stream closed before the connected event"));
+            }
+
+            private void onClosed() {
+                if (counted) {
+                    open.decrementAndGet();
+                }
+            }
+        }));
+        return connected;
+    }
+
+    private void report(int connections, long rampMillis, int holdSeconds, long heapBefore, long heapAfter) {
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("Clients: %d, connected: %d, failed: %d, still open: %d, ramp-up: %d ms%n",
+                connections, sorted.length, failures.get(), open.get(), rampMillis);
+        if (sorted.length > 0) {
+            System.out.printf("Connection latency (ms): p50 %.1f, p90 %.1f, p99 %.1f, max %.1f%n",
+                    percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), sorted[sorted.length - 1] / 1e6);
+        }
+        System.out.printf("Events received: %d (%.1f per second)%n", received.get(), received.get() / (double) Math.max(1, holdSeconds));
+        if (heapBefore >= 0 && heapAfter > heapBefore && open.get() > 0) {
+            double heapGb = (heapAfter - heapBefore) / (1024.0 * 1024 * 1024);
+            System.out.printf("Heap: %d MB -> %d MB, %.1f KB per connection, %.0f connections per GB%n",
+                    heapBefore >> 20, heapAfter >> 20, (heapAfter - heapBefore) / 1024.0 / open.get(), open.get() / heapGb);
+        } else {
+            System.out.println("Heap: not available from the actuator");
+        }
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
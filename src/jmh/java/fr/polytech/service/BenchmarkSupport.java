@@ -0,0 +1,154 @@
+package fr.polytech.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import fr.polytech.config.NotificationDeserializer;
+import fr.polytech.model.Category;
+import fr.polytech.model.OverflowPolicy;
+import fr.polytech.repository.NotificationRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Builds the services outside of Spring for the benchmarks, with an in-memory stand-in for Mongo.
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Repository stand-in: saves return the saved entity, inserts always insert, every other query is empty.
+     *
+     * @return The in-memory notification repository.
+     */
+    static NotificationRepository inMemoryNotificationRepository() {
+        return inMemoryNotificationRepository(Duration.ZERO);
+    }
+
+    /**
+     * Repository stand-in whose writes complete after a fixed latency, standing for the round trip to Mongo.
+     *
+     * @param writeLatency The latency of each save or insert, one round trip for a bulk insert.
+     * @return The in-memory notification repository.
+     */
+    static NotificationRepository inMemoryNotificationRepository(Duration writeLatency) {
+        return (NotificationRepository) Proxy.newProxyInstance(
+                NotificationRepository.class.getClassLoader(),
+                new Class<?>[]{NotificationRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("save")) {
+                        return withLatency(Mono.just(args[0]), writeLatency);
+                    }
+                    if (method.getName().equals("insertIfAbsent")) {
+                        return withLatency(Mono.just(true), writeLatency);
+                    }
+                    if (method.getName().equals("insertAllIfAbsent")) {
+                        return withLatency(Mono.just(args[0]), writeLatency);
+                    }
+                    if (Flux.class.isAssignableFrom(method.getReturnType())) {
+                        return Flux.empty();
+                    }
+                    if (Mono.class.isAssignableFrom(method.getReturnType())) {
+                        return Mono.empty();
+                    }
+                    if (method.getName().equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    }
+                    if (method.getName().equals("equals")) {
+                        return proxy == args[0];
+                    }
+                    return method.getName().equals("toString") ? "InMemoryNotificationRepository" : null;
+                });
+    }
+
+    private static <T> Mono<T> withLatency(Mono<T> result, Duration latency) {
+        return latency.isZero() ? result : result.delayElement(latency);
+    }
+
+    static ObjectMapper objectMapper() {
+        return new ObjectMapper();
+    }
+
+    static MeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+
+    /**
+     * @return A notification encoder whose JSON mapper writes ISO dates, as configured by Spring Boot.
+     */
+    static NotificationEncoder notificationEncoder() {
+        ObjectMapper jsonMapper = new Jackson2ObjectMapperBuilder()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        return new NotificationEncoder(jsonMapper, new Jackson2ObjectMapperBuilder());
+    }
+
+    /**
+     * @param notificationRepository The repository used for replays.
+     * @return An SSE service configured with the default properties and no heartbeat during the run.
+     */
+    static SSEService sseService(NotificationRepository notificationRepository) {
+        SSEService sseService = new SSEService(notificationRepository, meterRegistry(), new NotificationMetrics(meterRegistry()), 0, 10_000, 100, notificationEncoder(),
+                new BroadcastMaterializer(null, notificationRepository, 100_000));
+        setField(sseService, "bufferSize", 256);
+        setField(sseService, "overflowPolicy", OverflowPolicy.DROP_OLDEST);
+        setField(sseService, "replayBufferSize", 64);
+        setField(sseService, "replayRetentionMs", 60_000L);
+        setField(sseService, "replayMaxBackfill", 500);
+        setField(sseService, "heartbeatIntervalMs", 3_600_000L);
+        setField(sseService, "idleTimeoutMs", 3_600_000L);
+        setField(sseService, "shutdownTimeoutMs", 5_000L);
+        return sseService;
+    }
+
+    /**
+     * Build the ingestion path from the Kafka listeners to the SSE service, with the in-memory bus and without
+     * coalescing.
+     *
+     * @param notificationRepository The repository.
+     * @param sseService             The SSE service.
+     * @return The Kafka service.
+     */
+    static KafkaService kafkaService(NotificationRepository notificationRepository, SSEService sseService) {
+        UnreadCounterService unreadCounterService = new UnreadCounterService(notificationRepository);
+        NotificationCache notificationCache = new NotificationCache(meterRegistry(),
+                "maximumSize=10000,expireAfterWrite=60s", "maximumSize=10000,expireAfterWrite=30s");
+        NotificationMetrics notificationMetrics = new NotificationMetrics(meterRegistry());
+        BroadcastMaterializer broadcastMaterializer = new BroadcastMaterializer(null, notificationRepository, 100_000);
+        NotificationDispatcher notificationDispatcher = new NotificationDispatcher(unreadCounterService, notificationCache, sseService,
+                broadcastMaterializer);
+        NotificationService notificationService = new NotificationService(notificationRepository, null,
+                new InMemoryNotificationBus(notificationDispatcher), unreadCounterService, notificationCache, notificationMetrics,
+                new RecentNotificationFilter(100_000), new DecodedTokenCache(10_000, 300_000), sseService,
+                broadcastMaterializer);
+        NotificationCoalescer notificationCoalescer = new NotificationCoalescer(notificationService, null, null,
+                meterRegistry(), null, List.of(Category.OFFER));
+        return new KafkaService(notificationCoalescer, notificationMetrics, null, new NotificationDeserializer(objectMapper()));
+    }
+
+    /**
+     * Set a field normally injected by Spring from the configuration.
+     *
+     * @param target The object.
+     * @param name   The field name.
+     * @param value  The value.
+     */
+    static void setField(Object target, String name, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot set field " + name, e);
+        }
+    }
+}
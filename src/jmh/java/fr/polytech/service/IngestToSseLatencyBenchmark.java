@@ -0,0 +1,67 @@
+package fr.polytech.service;
+
+import fr.polytech.repository.NotificationRepository;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.Disposable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end latency from a Kafka message received by {@link KafkaService} to the server sent event emitted on
+ * the connection of its receiver, with an in-memory stand-in for Mongo and the in-memory bus.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IngestToSseLatencyBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int connectedUsers;
+
+    private KafkaService kafkaService;
+    private final List<byte[]> records = new ArrayList<>();
+    private final List<Disposable> subscriptions = new ArrayList<>();
+    private volatile CompletableFuture<Void> delivered;
+    private long offset;
+
+    @Setup
+    public void setup() {
+        NotificationRepository notificationRepository = BenchmarkSupport.inMemoryNotificationRepository();
+        SSEService sseService = BenchmarkSupport.sseService(notificationRepository);
+        kafkaService = BenchmarkSupport.kafkaService(notificationRepository, sseService);
+
+        for (int user = 0; user < connectedUsers; user++) {
+            UUID userId = UUID.randomUUID();
+            subscriptions.add(sseService.registerUser(userId, null, false)
+                    .filter(event -> event.data() != null)
+                    .subscribe(event -> delivered.complete(null)));
+            records.add(("{\"date\":\"2023-11-02T10:15:30.000+00:00\",\"category\":\"OFFER\","
+                    + "\"message\":\"A new offer matches your profile\","
+                    + "\"objectId\":\"" + UUID.randomUUID() + "\",\"receiverId\":\"" + userId + "\"}")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        subscriptions.forEach(Disposable::dispose);
+    }
+
+    @Benchmark
+    public void ingestToSse() {
+        delivered = new CompletableFuture<>();
+        byte[] record = records.get(ThreadLocalRandom.current().nextInt(records.size()));
+        kafkaService.listenOffer(new ConsumerRecord<>(KafkaService.OFFER_TOPIC, 0, offset++, null, record));
+        delivered.join();
+    }
+}
@@ -0,0 +1,72 @@
+package fr.polytech.service;
+
+import fr.polytech.config.NotificationDeserializer;
+import fr.polytech.model.Notification;
+import fr.polytech.repository.NotificationRepository;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingestion throughput of the per-record listeners against the batch listeners, from the record bytes to the
+ * bus, with an in-memory stand-in for Mongo whose writes take a configurable round trip.
+ * The per-record path waits for one round trip per record, the batch path for one bulk write per batch.
+ * The score is in records per millisecond for both paths.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KafkaIngestThroughputBenchmark {
+
+    private static final int BATCH_SIZE = 500;
+
+    @Param({"0", "1"})
+    public long writeLatencyMs;
+
+    private KafkaService kafkaService;
+    private NotificationDeserializer notificationDeserializer;
+    private final List<byte[]> values = new ArrayList<>(BATCH_SIZE);
+    private long offset;
+
+    @Setup
+    public void setup() {
+        NotificationRepository notificationRepository = BenchmarkSupport.inMemoryNotificationRepository(Duration.ofMillis(writeLatencyMs));
+        kafkaService = BenchmarkSupport.kafkaService(notificationRepository, BenchmarkSupport.sseService(notificationRepository));
+        notificationDeserializer = new NotificationDeserializer(BenchmarkSupport.objectMapper());
+        for (int record = 0; record < BATCH_SIZE; record++) {
+            values.add(("{\"date\":\"2023-11-02T10:15:30.000+00:00\",\"category\":\"OFFER\","
+                    + "\"message\":\"A new offer matches your profile\","
+                    + "\"objectId\":\"" + UUID.randomUUID() + "\",\"receiverId\":\"" + UUID.randomUUID() + "\"}")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void perRecord() {
+        for (byte[] value : values) {
+            kafkaService.listenOffer(new ConsumerRecord<>(KafkaService.OFFER_TOPIC, 0, offset++, null, value));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void batch() {
+        List<ConsumerRecord<String, Notification>> records = new ArrayList<>(BATCH_SIZE);
+        for (byte[] value : values) {
+            records.add(new ConsumerRecord<>(KafkaService.OFFER_TOPIC, 0, offset++, null,
+                    notificationDeserializer.deserialize(KafkaService.OFFER_TOPIC, value)));
+        }
+        kafkaService.listenOfferBatch(records, () -> {
+        });
+    }
+}
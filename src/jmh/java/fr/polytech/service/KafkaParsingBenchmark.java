@@ -0,0 +1,50 @@
+package fr.polytech.service;
+
+import fr.polytech.config.NotificationDeserializer;
+import fr.polytech.model.Notification;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deserialization of the Kafka records received on "offer-topic" and "experience-creation-topic".
+ * Run with "-prof gc" to compare the allocation rate per record.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KafkaParsingBenchmark {
+
+    private NotificationDeserializer notificationDeserializer;
+    private byte[] offerRecord;
+    private byte[] experienceRecord;
+
+    @Setup
+    public void setup() {
+        notificationDeserializer = new NotificationDeserializer(BenchmarkSupport.objectMapper());
+        offerRecord = ("{\"date\":\"2023-11-02T10:15:30.000+00:00\",\"category\":\"OFFER\","
+                + "\"message\":\"A new offer matches your profile\","
+                + "\"objectId\":\"" + UUID.randomUUID() + "\",\"receiverId\":\"" + UUID.randomUUID() + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        experienceRecord = ("{\"id\":\"" + UUID.randomUUID() + "\",\"userId\":\"" + UUID.randomUUID() + "\","
+                + "\"jobTitle\":\"Waiter\",\"jobCategoryId\":\"" + UUID.randomUUID() + "\","
+                + "\"startDate\":\"2023-06-01T00:00:00.000+00:00\",\"endDate\":\"2023-09-01T00:00:00.000+00:00\","
+                + "\"companyId\":\"" + UUID.randomUUID() + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Notification parseOffer() {
+        return notificationDeserializer.deserialize(KafkaService.OFFER_TOPIC, offerRecord);
+    }
+
+    @Benchmark
+    public Notification parseExperience() {
+        return notificationDeserializer.deserialize(KafkaService.EXPERIENCE_TOPIC, experienceRecord);
+    }
+}
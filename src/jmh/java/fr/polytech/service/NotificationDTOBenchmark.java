@@ -0,0 +1,40 @@
+package fr.polytech.service;
+
+import fr.polytech.model.Category;
+import fr.polytech.model.Notification;
+import fr.polytech.model.NotificationDTO;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of a stored notification to the DTO sent to the clients.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NotificationDTOBenchmark {
+
+    private Notification notification;
+
+    @Setup
+    public void setup() {
+        notification = new Notification();
+        notification.setId(UUID.randomUUID().toString());
+        notification.setDate(new Date());
+        notification.setCategory(Category.OFFER);
+        notification.setMessage("A new offer matches your profile");
+        notification.setObjectId(UUID.randomUUID().toString());
+        notification.setReceiverId(UUID.randomUUID().toString());
+    }
+
+    @Benchmark
+    public NotificationDTO toDTO() {
+        return new NotificationDTO(notification);
+    }
+}
@@ -0,0 +1,68 @@
+package fr.polytech.service;
+
+import fr.polytech.model.Category;
+import fr.polytech.model.NotificationDTO;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the notification sent on the SSE stream, in JSON with ISO dates as configured by Spring Boot,
+ * and in CBOR.
+ * The size of each encoding is printed at setup.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PayloadEncodingBenchmark {
+
+    private NotificationEncoder notificationEncoder;
+    private NotificationDTO notification;
+    private SSEFrame frame;
+
+    @Setup
+    public void setup() {
+        notificationEncoder = BenchmarkSupport.notificationEncoder();
+        notification = new NotificationDTO();
+        notification.setId(UUID.randomUUID().toString());
+        notification.setDate(new Date());
+        notification.setCategory(Category.OFFER);
+        notification.setMessage("A new offer matches your profile");
+        notification.setObjectId(UUID.randomUUID());
+        notification.setReceiverId(UUID.randomUUID());
+        frame = new SSEFrame(notification, notificationEncoder::toJson, notificationEncoder::toBase64Cbor);
+
+        System.out.printf("%nJSON: %d bytes, CBOR: %d bytes, CBOR in Base64: %d bytes%n",
+                notificationEncoder.toJson(notification).getBytes(StandardCharsets.UTF_8).length, notificationEncoder.toCbor(notification).length,
+                notificationEncoder.toBase64Cbor(notification).getBytes(StandardCharsets.US_ASCII).length);
+    }
+
+    @Benchmark
+    public String json() {
+        return notificationEncoder.toJson(notification);
+    }
+
+    @Benchmark
+    public byte[] cbor() {
+        return notificationEncoder.toCbor(notification);
+    }
+
+    @Benchmark
+    public String cborBase64() {
+        return notificationEncoder.toBase64Cbor(notification);
+    }
+
+    /**
+     * Frame of a notification already sent to another connection of its receiver, shared instead of encoded again.
+     */
+    @Benchmark
+    public String sharedFrame() {
+        return frame.getData(false);
+    }
+}
@@ -0,0 +1,81 @@
+package fr.polytech.service;
+
+import fr.polytech.model.Broadcast;
+import fr.polytech.model.Category;
+import fr.polytech.model.NotificationDTO;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.Disposable;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivery of a notification to the connections of one user among many connected users, and of a broadcast
+ * to every connected user in one pass over the registry.
+ * Notifications are delivered by the threads of the SSE shards, so the single user benchmark measures the
+ * sustained delivery rate: once the shard queues are full, the benchmark thread delivers itself.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SSEFanOutBenchmark {
+
+    @Param({"1000", "10000"})
+    public int connectedUsers;
+
+    @Param({"1", "4"})
+    public int connectionsPerUser;
+
+    private SSEService sseService;
+    private final List<NotificationDTO> notifications = new ArrayList<>();
+    private final List<Disposable> subscriptions = new ArrayList<>();
+    private Broadcast broadcast;
+
+    @Setup
+    public void setup() {
+        sseService = BenchmarkSupport.sseService(BenchmarkSupport.inMemoryNotificationRepository());
+        for (int user = 0; user < connectedUsers; user++) {
+            UUID userId = UUID.randomUUID();
+            for (int connection = 0; connection < connectionsPerUser; connection++) {
+                subscriptions.add(sseService.registerUser(userId, null, false).subscribe());
+            }
+            NotificationDTO notification = new NotificationDTO();
+            notification.setId(UUID.randomUUID().toString());
+            notification.setDate(new Date());
+            notification.setCategory(Category.OFFER);
+            notification.setMessage("A new offer matches your profile");
+            notification.setObjectId(UUID.randomUUID());
+            notification.setReceiverId(userId);
+            notifications.add(notification);
+        }
+        broadcast = new Broadcast();
+        broadcast.setId(UUID.randomUUID().toString());
+        broadcast.setDate(new Date());
+        broadcast.setCategory(Category.OFFER);
+        broadcast.setMessage("A new feature is available");
+        broadcast.setObjectId(UUID.randomUUID().toString());
+    }
+
+    @TearDown
+    public void tearDown() {
+        subscriptions.forEach(Disposable::dispose);
+        sseService.shutdown();
+    }
+
+    @Benchmark
+    public void sendNotificationToOneUser() {
+        sseService.sendNotificationToOneUser(notifications.get(ThreadLocalRandom.current().nextInt(notifications.size())));
+    }
+
+    @Benchmark
+    public int sendBroadcast() {
+        return sseService.sendBroadcast(broadcast).join();
+    }
+}
@@ -0,0 +1,32 @@
+package fr.polytech.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generation of the unique tokens used to subscribe to the SSE stream.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubscribeTokenBenchmark {
+
+    private SubscribeTokenService subscribeTokenService;
+    private UUID userId;
+
+    @Setup
+    public void setup() {
+        subscribeTokenService = new SubscribeTokenService(null, null);
+        userId = UUID.randomUUID();
+    }
+
+    @Benchmark
+    public String generateUniqueToken() {
+        return subscribeTokenService.generateUniqueToken(userId);
+    }
+}
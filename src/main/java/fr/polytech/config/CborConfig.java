@@ -0,0 +1,96 @@
+package fr.polytech.config;
+
+import fr.polytech.service.NotificationEncoder;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.util.MimeType;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Negotiate CBOR next to JSON on the REST endpoints: a client sending "Accept: application/cbor" gets the
+ * compact encoding of {@link NotificationEncoder}, on the servlet stack and on the "reactive" profile.
+ * <p>
+ * JSON stays the default: the CBOR converter and codec come after the JSON ones, so a client accepting any type
+ * gets JSON, and the CBOR codec is only used when CBOR is asked for explicitly.
+ */
+@Configuration
+public class CborConfig {
+
+    /**
+     * CBOR message converter of the servlet stack, added after the default converters.
+     * The CBOR converter registered by Spring MVC with a default mapper is replaced.
+     *
+     * @param notificationEncoder The encoder holding the CBOR mapper.
+     * @return The MVC configurer.
+     */
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public WebMvcConfigurer cborMessageConverterConfigurer(NotificationEncoder notificationEncoder) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+                converters.removeIf(MappingJackson2CborHttpMessageConverter.class::isInstance);
+                converters.add(new MappingJackson2CborHttpMessageConverter(notificationEncoder.getCborMapper()));
+            }
+        };
+    }
+
+    /**
+     * CBOR codecs of WebFlux, registered after the default JSON codecs.
+     *
+     * @param notificationEncoder The encoder holding the CBOR mapper.
+     * @return The codec customizer.
+     */
+    @Bean
+    public CodecCustomizer cborCodecCustomizer(NotificationEncoder notificationEncoder) {
+        return configurer -> {
+            configurer.customCodecs().register(new CollectingCborEncoder(notificationEncoder));
+            configurer.customCodecs().register(new Jackson2CborDecoder(notificationEncoder.getCborMapper()));
+        };
+    }
+
+    /**
+     * CBOR encoder only selected for an explicit CBOR media type. Jackson cannot write a stream of CBOR values,
+     * so the elements of a Flux are collected and written as one CBOR array, as a JSON array is for JSON.
+     */
+    private static class CollectingCborEncoder extends Jackson2CborEncoder {
+
+        CollectingCborEncoder(NotificationEncoder notificationEncoder) {
+            super(notificationEncoder.getCborMapper());
+        }
+
+        @Override
+        public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+            return mimeType != null && !mimeType.isWildcardType() && !mimeType.isWildcardSubtype()
+                    && MediaType.APPLICATION_CBOR.isCompatibleWith(mimeType) && super.canEncode(elementType, mimeType);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory, ResolvableType elementType,
+                                       MimeType mimeType, Map<String, Object> hints) {
+            if (inputStream instanceof Mono) {
+                return super.encode(inputStream, bufferFactory, elementType, mimeType, hints);
+            }
+            ResolvableType listType = ResolvableType.forClassWithGenerics(List.class, elementType);
+            return Flux.from(inputStream)
+                    .collectList()
+                    .flatMapMany(elements -> super.encode(Mono.just(elements), bufferFactory, listType, mimeType, hints));
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package fr.polytech.config;
 
+import fr.polytech.service.DecodedTokenCache;
+import fr.polytech.service.DecodedTokenCache.DecodedToken;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.AbstractAuthenticationToken;
@@ -20,34 +23,50 @@ import java.util.stream.Stream;
 public class JwtAuthConverter implements Converter<Jwt, AbstractAuthenticationToken> {
 
     private final JwtGrantedAuthoritiesConverter jwtGrantedAuthoritiesConverter;
+    private final DecodedTokenCache decodedTokenCache;
 
-    public JwtAuthConverter() {
+    @Autowired
+    public JwtAuthConverter(DecodedTokenCache decodedTokenCache) {
         this.jwtGrantedAuthoritiesConverter = new JwtGrantedAuthoritiesConverter();
+        this.decodedTokenCache = decodedTokenCache;
     }
 
     private final String principleAttribute = System.getenv("PRINCIPLE_ATTRIBUTE_NAME");
     private final String resourceId = System.getenv("RESOURCE_ID");
 
     /**
-     * Convert the JWT to an authentication token
+     * Convert the JWT to an authentication token.
+     * The authorities and the principal name are only extracted the first time a token is seen.
      *
      * @param jwt The JWT
      * @return The authentication token
      */
     @Override
     public AbstractAuthenticationToken convert(@NonNull Jwt jwt) {
-        Collection<GrantedAuthority> authorities = Stream.concat(
-                jwtGrantedAuthoritiesConverter.convert(jwt).stream(),
-                extractResourceRoles(jwt).stream()
-        ).collect(Collectors.toSet());
+        DecodedToken decodedToken = decodedTokenCache.get(jwt.getTokenValue(), token -> decode(jwt));
 
         return new JwtAuthenticationToken(
                 jwt,
-                authorities,
-                getPrincipleClaimName(jwt)
+                decodedToken.authorities(),
+                decodedToken.principalName()
         );
     }
 
+    /**
+     * Extract the values cached for the JWT
+     *
+     * @param jwt The JWT
+     * @return The decoded token
+     */
+    private DecodedToken decode(Jwt jwt) {
+        Collection<GrantedAuthority> authorities = Stream.concat(
+                jwtGrantedAuthoritiesConverter.convert(jwt).stream(),
+                extractResourceRoles(jwt).stream()
+        ).collect(Collectors.toUnmodifiableSet());
+
+        return new DecodedToken(jwt.getSubject(), getPrincipleClaimName(jwt), authorities, jwt.getExpiresAt());
+    }
+
     /**
      * Get the principle claim name from the JWT
      *
@@ -0,0 +1,137 @@
+package fr.polytech.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.polytech.model.Notification;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+
+import java.util.Map;
+
+@Configuration
+public class KafkaConfig {
+
+    @Value("${notification.kafka.batch.max-size:500}")
+    private int maxBatchSize;
+
+    @Value("${notification.kafka.batch.linger-ms:50}")
+    private int lingerMs;
+
+    @Value("${notification.kafka.batch.min-bytes:16384}")
+    private int minBytes;
+
+    @Value("${notification.kafka.dead-letter-suffix:.DLT}")
+    private String deadLetterSuffix;
+
+    /**
+     * Template of the application, declared here since the dead letter template below replaces the one
+     * auto-configured by Spring Boot.
+     *
+     * @param kafkaProducerFactory The producer factory auto-configured by Spring Boot.
+     * @return The Kafka template.
+     */
+    @Bean
+    @Primary
+    public KafkaTemplate<String, String> kafkaTemplate(ProducerFactory<String, String> kafkaProducerFactory) {
+        return new KafkaTemplate<>(kafkaProducerFactory);
+    }
+
+    /**
+     * Template publishing the records of the notification topics, as raw bytes, to their retry and dead letter topics.
+     *
+     * @param kafkaProperties The Kafka properties of the application.
+     * @return The dead letter template.
+     */
+    @Bean
+    public KafkaTemplate<String, byte[]> deadLetterKafkaTemplate(KafkaProperties kafkaProperties) {
+        return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(kafkaProperties.buildProducerProperties(),
+                new StringSerializer(), new ByteArraySerializer()));
+    }
+
+    /**
+     * Recoverer publishing the failed records of the batch listeners to the dead letter topic of their topic.
+     * Records that failed deserialization are published with their original bytes. The partition is left to the
+     * producer since the dead letter topics may have fewer partitions than the original topics.
+     *
+     * @param deadLetterKafkaTemplate The dead letter template.
+     * @return The dead letter recoverer.
+     */
+    @Bean
+    public DeadLetterPublishingRecoverer deadLetterPublishingRecoverer(KafkaTemplate<String, byte[]> deadLetterKafkaTemplate) {
+        return new DeadLetterPublishingRecoverer(deadLetterKafkaTemplate,
+                (record, exception) -> new TopicPartition(record.topic() + deadLetterSuffix, -1));
+    }
+
+    /**
+     * Deserializer of the notification records, shared by every consumer since it is thread safe.
+     *
+     * @param objectMapper The object mapper of the application.
+     * @return The notification deserializer.
+     */
+    @Bean
+    public NotificationDeserializer notificationDeserializer(ObjectMapper objectMapper) {
+        return new NotificationDeserializer(objectMapper);
+    }
+
+    /**
+     * Container factory for the record listeners of the notification topics.
+     * Values are received as raw bytes and deserialized by the listener, so that a record keeps its original
+     * bytes when it is sent to the retry and dead letter topics and can be replayed as is.
+     * Its error handler is set by the retry topics infrastructure.
+     *
+     * @param kafkaProperties The Kafka properties of the application.
+     * @return The record listener container factory.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, byte[]> notificationKafkaListenerContainerFactory(KafkaProperties kafkaProperties) {
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(kafkaProperties.buildConsumerProperties(),
+                new StringDeserializer(), new ByteArrayDeserializer()));
+        return factory;
+    }
+
+    /**
+     * Container factory for the batch listeners.
+     * A poll returns at most "max-size" records and the broker holds the fetch for up to "linger-ms" until
+     * "min-bytes" are available, so bursts are grouped into large batches while quiet periods keep a low latency.
+     * Offsets are committed manually by the listener once the batch has been persisted.
+     * Records that cannot be deserialized are delivered with a null value and the deserialization exception
+     * in their headers instead of failing the poll.
+     *
+     * @param kafkaProperties          The Kafka properties of the application.
+     * @param notificationDeserializer The notification deserializer.
+     * @return The batch listener container factory.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Notification> batchKafkaListenerContainerFactory(KafkaProperties kafkaProperties,
+                                                                                                           NotificationDeserializer notificationDeserializer) {
+        Map<String, Object> consumerProperties = kafkaProperties.buildConsumerProperties();
+        consumerProperties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxBatchSize);
+        consumerProperties.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, lingerMs);
+        consumerProperties.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, minBytes);
+        consumerProperties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+
+        ConcurrentKafkaListenerContainerFactory<String, Notification> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(consumerProperties, new StringDeserializer(),
+                new ErrorHandlingDeserializer<>(notificationDeserializer)));
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        return factory;
+    }
+}
@@ -0,0 +1,84 @@
+package fr.polytech.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import fr.polytech.model.Category;
+import fr.polytech.model.ExperienceDTOWithUserId;
+import fr.polytech.model.Notification;
+import fr.polytech.service.KafkaService;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Deserialize the records of the notification topics straight from their bytes into the document that is persisted.
+ * <p>
+ * The readers are built once and are thread safe, so a record costs the parsing itself and the resulting document,
+ * without any intermediate String or DTO. Records of "experience-creation-topic" are turned into the
+ * notification sent to the user of the experience.
+ * Invalid records throw a {@link SerializationException}, so that they are sent to the dead letter topic
+ * by the record listeners, or by the batch listeners through an ErrorHandlingDeserializer.
+ */
+public class NotificationDeserializer implements Deserializer<Notification> {
+
+    private final ObjectReader notificationReader;
+    private final ObjectReader experienceReader;
+
+    public NotificationDeserializer(ObjectMapper objectMapper) {
+        this.notificationReader = objectMapper.readerFor(Notification.class);
+        this.experienceReader = objectMapper.readerFor(ExperienceDTOWithUserId.class);
+    }
+
+    @Override
+    public Notification deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            Notification notification = KafkaService.EXPERIENCE_TOPIC.equals(topic)
+                    ? experienceToNotification(experienceReader.readValue(data))
+                    : notificationReader.readValue(data);
+            validate(notification);
+            return notification;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new SerializationException("Invalid notification record on topic " + topic, e);
+        }
+    }
+
+    /**
+     * Build the notification sent to a user when an experience is created for them.
+     *
+     * @param experienceDTOWithUserId The created experience.
+     * @return The notification to send to the concerned user.
+     */
+    private Notification experienceToNotification(ExperienceDTOWithUserId experienceDTOWithUserId) {
+        Notification notification = new Notification();
+        notification.setCategory(Category.EXPERIENCE);
+        notification.setDate(new Date());
+        notification.setReceiverId(experienceDTOWithUserId.getUserId() == null ? null : experienceDTOWithUserId.getUserId().toString());
+        notification.setMessage("You have a new experience");
+        notification.setObjectId(experienceDTOWithUserId.getId() == null ? null : experienceDTOWithUserId.getId().toString());
+        return notification;
+    }
+
+    /**
+     * Reject the notifications that could not be sent, and reset the fields owned by this service.
+     *
+     * @param notification The notification read from the record.
+     * @throws IllegalArgumentException If the receiver or the object is missing or is not a UUID.
+     */
+    private void validate(Notification notification) {
+        if (notification.getReceiverId() == null || notification.getObjectId() == null || notification.getCategory() == null) {
+            throw new IllegalArgumentException("Missing receiverId, objectId or category");
+        }
+        UUID.fromString(notification.getReceiverId());
+        UUID.fromString(notification.getObjectId());
+        notification.setId(null);
+        notification.setRead(false);
+        notification.setReadAt(null);
+        notification.setCount(null);
+    }
+}
@@ -0,0 +1,56 @@
+package fr.polytech.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.security.config.annotation.method.configuration.EnableReactiveMethodSecurity;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.oauth2.server.resource.authentication.ReactiveJwtAuthenticationConverterAdapter;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+
+/**
+ * Security of the "reactive" profile, equivalent to {@link SecurityConfig} on WebFlux.
+ */
+@Configuration
+@Profile("reactive")
+@EnableWebFluxSecurity
+@EnableReactiveMethodSecurity
+public class ReactiveSecurityConfig {
+
+    private final JwtAuthConverter jwtAuthConverter;
+
+    @Autowired
+    public ReactiveSecurityConfig(JwtAuthConverter jwtAuthConverter) {
+        this.jwtAuthConverter = jwtAuthConverter;
+    }
+
+    /**
+     * Configure the security filter chain.
+     *
+     * @param http the server http security builder
+     * @return the security filter chain
+     */
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http) {
+        http
+                .csrf(ServerHttpSecurity.CsrfSpec::disable)
+                .authorizeExchange((exchange) -> exchange
+                        .pathMatchers("/api/v1/notification/sse/subscribe/**").permitAll()
+                        .anyExchange().authenticated());
+
+        http
+                .oauth2ResourceServer((oauth2) -> oauth2
+                        .jwt((jwt) -> jwt
+                                .jwtAuthenticationConverter(new ReactiveJwtAuthenticationConverterAdapter(jwtAuthConverter))
+                        )
+                );
+
+        http
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance());
+
+        return http.build();
+    }
+}
@@ -0,0 +1,21 @@
+package fr.polytech.config;
+
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Web server of the "reactive" profile, which runs the API on WebFlux instead of the servlet stack.
+ * Tomcat is on the classpath for the servlet stack and would be picked as the reactive server too,
+ * so Reactor Netty is declared explicitly to serve the requests and SSE streams end to end without a thread per connection.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveWebServerConfig {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
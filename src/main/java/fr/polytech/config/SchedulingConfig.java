@@ -0,0 +1,12 @@
+package fr.polytech.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enable the shared scheduler running the periodic maintenance tasks of the services.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -1,7 +1,6 @@
 package fr.polytech.config;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.interfaces.DecodedJWT;
+import fr.polytech.service.DecodedTokenCache;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -9,11 +8,18 @@ import org.springframework.context.annotation.Configuration;
 public class SecurityMethodConfig {
 
     @Bean
-    public SecurityMethods securityMethods() {
-        return new SecurityMethods();
+    public SecurityMethods securityMethods(DecodedTokenCache decodedTokenCache) {
+        return new SecurityMethods(decodedTokenCache);
     }
 
     public static class SecurityMethods {
+
+        private final DecodedTokenCache decodedTokenCache;
+
+        public SecurityMethods(DecodedTokenCache decodedTokenCache) {
+            this.decodedTokenCache = decodedTokenCache;
+        }
+
         /**
          * Check if the user is the sender of the notification.
          *
@@ -23,8 +29,7 @@ public class SecurityMethodConfig {
          */
         public boolean isSender(String userId, String token) {
             String pureToken = token.replace("Bearer ", "");
-            DecodedJWT decodedToken = JWT.decode(pureToken);
-            return decodedToken.getSubject().equals(userId);
+            return decodedTokenCache.subject(pureToken).equals(userId);
         }
     }
 }
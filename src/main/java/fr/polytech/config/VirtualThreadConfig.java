@@ -0,0 +1,77 @@
+package fr.polytech.config;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.kafka.config.AbstractKafkaListenerContainerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Run the Tomcat request handling and the Kafka listener containers on virtual threads, so that the blocking
+ * parts of the service (JWT decoding, blocking waits on Mongo in the listeners, load balanced RestTemplate calls)
+ * park a virtual thread instead of holding a platform thread.
+ * <p>
+ * Enabled with "notification.virtual-threads.enabled=true". Virtual threads are a preview feature of Java 20,
+ * so the JVM must also be started with "--enable-preview". The executor is created reflectively so that the
+ * classes of the service do not depend on a preview API and run unchanged on later Java versions.
+ */
+@Configuration
+@ConditionalOnProperty(name = "notification.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    /**
+     * Executor starting a new virtual thread per task.
+     *
+     * @return The virtual thread executor.
+     * @throws IllegalStateException If virtual threads are not available on this JVM.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            throw new IllegalStateException("Virtual threads are not available, start the JVM with --enable-preview on Java 20", e);
+        }
+    }
+
+    /**
+     * Handle the Tomcat requests on virtual threads instead of the bounded worker pool.
+     *
+     * @param virtualThreadExecutor The virtual thread executor.
+     * @return The protocol handler customizer.
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    /**
+     * Run the consumer loop of every Kafka listener container on a virtual thread.
+     * The executor is resolved lazily so that it does not have to be created before the post processors.
+     *
+     * @param virtualThreadExecutor The provider of the virtual thread executor.
+     * @return The post processor of the listener container factories.
+     */
+    @Bean
+    public static BeanPostProcessor virtualThreadListenerContainerPostProcessor(ObjectProvider<ExecutorService> virtualThreadExecutor) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+                if (bean instanceof AbstractKafkaListenerContainerFactory<?, ?, ?> factory) {
+                    AsyncTaskExecutor listenerTaskExecutor = new TaskExecutorAdapter(virtualThreadExecutor.getObject());
+                    factory.getContainerProperties().setListenerTaskExecutor(listenerTaskExecutor);
+                }
+                return bean;
+            }
+        };
+    }
+}
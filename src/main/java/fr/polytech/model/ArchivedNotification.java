@@ -0,0 +1,105 @@
+package fr.polytech.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.util.Date;
+
+/**
+ * Expired notification moved to the archive collection.
+ * Field names are shortened to keep the archived documents compact.
+ */
+@Document(collection = "notification_archive")
+public class ArchivedNotification {
+
+    @Id
+    private String id;
+
+    @Field("d")
+    private Date date;
+
+    @Field("c")
+    private Category category;
+
+    @Field("m")
+    private String message;
+
+    @Field("o")
+    private String objectId;
+
+    @Field("r")
+    private String receiverId;
+
+    @Field("a")
+    private Date archivedAt;
+
+    public ArchivedNotification() {
+    }
+
+    public ArchivedNotification(Notification notification, Date archivedAt) {
+        this.id = notification.getId();
+        this.date = notification.getDate();
+        this.category = notification.getCategory();
+        this.message = notification.getMessage();
+        this.objectId = notification.getObjectId();
+        this.receiverId = notification.getReceiverId();
+        this.archivedAt = archivedAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
+    public Category getCategory() {
+        return category;
+    }
+
+    public void setCategory(Category category) {
+        this.category = category;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public String getObjectId() {
+        return objectId;
+    }
+
+    public void setObjectId(String objectId) {
+        this.objectId = objectId;
+    }
+
+    public String getReceiverId() {
+        return receiverId;
+    }
+
+    public void setReceiverId(String receiverId) {
+        this.receiverId = receiverId;
+    }
+
+    public Date getArchivedAt() {
+        return archivedAt;
+    }
+
+    public void setArchivedAt(Date archivedAt) {
+        this.archivedAt = archivedAt;
+    }
+}
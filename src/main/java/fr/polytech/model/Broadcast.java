@@ -0,0 +1,103 @@
+package fr.polytech.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Notification sent to every user or to a segment of users, stored once.
+ * The notification of each receiver is only written when the receiver reads its inbox.
+ */
+@Document(collection = "broadcast")
+public class Broadcast {
+
+    @Id
+    private String id;
+
+    private Date date;
+
+    private Category category;
+
+    private String message;
+
+    private String objectId;
+
+    /**
+     * Ids of the receivers of the broadcast, null for every user.
+     */
+    private List<String> receiverIds;
+
+    public Broadcast() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
+    public Category getCategory() {
+        return category;
+    }
+
+    public void setCategory(Category category) {
+        this.category = category;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public String getObjectId() {
+        return objectId;
+    }
+
+    public void setObjectId(String objectId) {
+        this.objectId = objectId;
+    }
+
+    public List<String> getReceiverIds() {
+        return receiverIds;
+    }
+
+    public void setReceiverIds(List<String> receiverIds) {
+        this.receiverIds = receiverIds;
+    }
+
+    /**
+     * Build the notification of one receiver of the broadcast.
+     * Its id is derived from the broadcast and the receiver, so the event sent on the SSE stream and the
+     * notification written later in the inbox of the receiver are the same notification.
+     *
+     * @param receiverId The receiver id.
+     * @return The notification of the receiver.
+     */
+    public Notification toNotification(String receiverId) {
+        Notification notification = new Notification();
+        notification.setId(UUID.nameUUIDFromBytes(("broadcast:" + id + ":" + receiverId).getBytes(StandardCharsets.UTF_8)).toString());
+        notification.setDate(date);
+        notification.setCategory(category);
+        notification.setMessage(message);
+        notification.setObjectId(objectId);
+        notification.setReceiverId(receiverId);
+        return notification;
+    }
+}
@@ -0,0 +1,40 @@
+package fr.polytech.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Date up to which the broadcasts have been written in the inbox of a user.
+ */
+@Document(collection = "broadcast_cursor")
+public class BroadcastCursor {
+
+    /**
+     * The user id.
+     */
+    @Id
+    private String id;
+
+    private Date date;
+
+    public BroadcastCursor() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public void setDate(Date date) {
+        this.date = date;
+    }
+}
@@ -0,0 +1,173 @@
+package fr.polytech.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Notifications of one receiver and one category waiting to be merged into a single notification.
+ * The group is stored before the records of its notifications are committed, so a window survives a restart
+ * and is flushed by any node.
+ */
+@Document(collection = "notification_coalesce")
+public class CoalescedGroup {
+
+    /**
+     * The receiver id and the category, see {@link #key(String, Category)}.
+     */
+    @Id
+    private String id;
+
+    private String topic;
+
+    @Indexed(name = "window_start_idx")
+    private Date windowStart;
+
+    private long oldestTimestamp = Long.MAX_VALUE;
+
+    /**
+     * Id of the notification that opened the window and was sent at once, null in digest mode.
+     */
+    private String leaderId;
+
+    /**
+     * Ids of the notifications of the group, in their order of arrival, up to a maximum number.
+     * A redelivered notification is only counted once.
+     */
+    private List<String> ids = new ArrayList<>();
+
+    /**
+     * Number of notifications added once the ids were full, counted without their ids.
+     */
+    private int overflow;
+
+    /**
+     * The latest notification of the group.
+     */
+    private Notification latest;
+
+    /**
+     * Number of failed flushes of the group.
+     */
+    private int attempts;
+
+    public CoalescedGroup() {
+    }
+
+    /**
+     * Build the id of the group of a receiver and a category.
+     *
+     * @param receiverId The receiver id.
+     * @param category   The category.
+     * @return The group id.
+     */
+    public static String key(String receiverId, Category category) {
+        return receiverId + ':' + category.name();
+    }
+
+    /**
+     * Build the notification sent in place of the notifications of the group: the notification itself if there
+     * is only one, otherwise a notification pointing to the latest object with the number of merged notifications.
+     * The id of the merged notification is derived from the id of the first one, so it is stable across retries
+     * and across the nodes flushing the same group.
+     *
+     * @return The notification to save and send, or null if the group is empty.
+     */
+    public Notification toNotification() {
+        if (ids == null || ids.isEmpty() || latest == null) {
+            return null;
+        }
+        int count = ids.size() + overflow;
+        if (count == 1) {
+            latest.setId(ids.get(0));
+            return latest;
+        }
+        Notification merged = new Notification();
+        merged.setId(UUID.nameUUIDFromBytes(("coalesced:" + ids.get(0)).getBytes(StandardCharsets.UTF_8)).toString());
+        merged.setReceiverId(latest.getReceiverId());
+        merged.setCategory(latest.getCategory());
+        merged.setObjectId(latest.getObjectId());
+        merged.setDate(latest.getDate());
+        merged.setMessage(count + " new " + latest.getCategory().name().toLowerCase() + " notifications");
+        merged.setCount(count);
+        return merged;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public Date getWindowStart() {
+        return windowStart;
+    }
+
+    public void setWindowStart(Date windowStart) {
+        this.windowStart = windowStart;
+    }
+
+    public long getOldestTimestamp() {
+        return oldestTimestamp;
+    }
+
+    public void setOldestTimestamp(long oldestTimestamp) {
+        this.oldestTimestamp = oldestTimestamp;
+    }
+
+    public String getLeaderId() {
+        return leaderId;
+    }
+
+    public void setLeaderId(String leaderId) {
+        this.leaderId = leaderId;
+    }
+
+    public List<String> getIds() {
+        return ids;
+    }
+
+    public void setIds(List<String> ids) {
+        this.ids = ids;
+    }
+
+    public int getOverflow() {
+        return overflow;
+    }
+
+    public void setOverflow(int overflow) {
+        this.overflow = overflow;
+    }
+
+    public Notification getLatest() {
+        return latest;
+    }
+
+    public void setLatest(Notification latest) {
+        this.latest = latest;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+}
@@ -0,0 +1,50 @@
+package fr.polytech.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Position in the inbox of a receiver, after a given notification in the (date, id) order.
+ * Notifications sharing a date are ordered by id, so a page boundary between them skips none of them.
+ * The cursor is given to the clients as an opaque URL-safe string.
+ *
+ * @param date The date of the notification.
+ * @param id   The id of the notification.
+ */
+public record InboxCursor(Date date, String id) {
+
+    /**
+     * Build the cursor of the page following a notification.
+     *
+     * @param notification The last notification of a page.
+     * @return The cursor.
+     */
+    public static InboxCursor after(Notification notification) {
+        return new InboxCursor(notification.getDate(), notification.getId());
+    }
+
+    /**
+     * Read a cursor given by a client.
+     *
+     * @param cursor The encoded cursor.
+     * @return The cursor.
+     * @throws IllegalArgumentException If the cursor is malformed.
+     */
+    public static InboxCursor decode(String cursor) {
+        String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int separator = decoded.indexOf(':');
+        if (separator <= 0 || separator == decoded.length() - 1) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        return new InboxCursor(new Date(Long.parseLong(decoded.substring(0, separator))), decoded.substring(separator + 1));
+    }
+
+    /**
+     * @return The cursor as an opaque URL-safe string.
+     */
+    public String encode() {
+        String cursor = date.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+}
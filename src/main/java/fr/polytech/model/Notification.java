@@ -2,11 +2,18 @@ package fr.polytech.model;
 
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.Date;
 
 @Document(collection = "notification")
+@CompoundIndexes({
+        @CompoundIndex(name = "receiver_date_id_idx", def = "{'receiverId': 1, 'date': -1, '_id': -1}"),
+        @CompoundIndex(name = "category_date_idx", def = "{'category': 1, 'date': 1}"),
+        @CompoundIndex(name = "receiver_read_idx", def = "{'receiverId': 1, 'read': 1}")
+})
 public class Notification {
 
     @Id
@@ -22,6 +29,15 @@ public class Notification {
 
     private String receiverId;
 
+    private boolean read;
+
+    private Date readAt;
+
+    /**
+     * Number of notifications merged into this one, null for a notification that was not coalesced.
+     */
+    private Integer count;
+
     public Notification() {
     }
 
@@ -72,4 +88,28 @@ public class Notification {
     public void setReceiverId(String receiverId) {
         this.receiverId = receiverId;
     }
+
+    public boolean isRead() {
+        return read;
+    }
+
+    public void setRead(boolean read) {
+        this.read = read;
+    }
+
+    public Date getReadAt() {
+        return readAt;
+    }
+
+    public void setReadAt(Date readAt) {
+        this.readAt = readAt;
+    }
+
+    public Integer getCount() {
+        return count;
+    }
+
+    public void setCount(Integer count) {
+        this.count = count;
+    }
 }
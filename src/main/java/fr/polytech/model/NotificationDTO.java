@@ -1,5 +1,7 @@
 package fr.polytech.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.util.Date;
 import java.util.UUID;
 
@@ -15,6 +17,8 @@ public class NotificationDTO {
     private UUID objectId;
     private UUID receiverId;
 
+    private Integer count;
+
     public NotificationDTO() {
     }
 
@@ -25,6 +29,33 @@ public class NotificationDTO {
         this.message = notification.getMessage();
         this.objectId = UUID.fromString(notification.getObjectId());
         this.receiverId = UUID.fromString(notification.getReceiverId());
+        this.count = notification.getCount();
+    }
+
+    /**
+     * Build the summary sent to a slow client in place of the notifications that did not fit in its buffer.
+     *
+     * @param receiverId The receiver id.
+     * @param count      The number of notifications that were not sent.
+     * @return The summary notification.
+     */
+    public static NotificationDTO summary(UUID receiverId, int count) {
+        NotificationDTO summary = new NotificationDTO();
+        summary.setDate(new Date());
+        summary.setMessage(count + " new notifications");
+        summary.setReceiverId(receiverId);
+        summary.setCount(count);
+        return summary;
+    }
+
+    /**
+     * A summary is not backed by a stored notification, so it has no id.
+     *
+     * @return True if this notification is a summary, false otherwise.
+     */
+    @JsonIgnore
+    public boolean isSummary() {
+        return id == null;
     }
 
     public String getId() {
@@ -75,8 +106,16 @@ public class NotificationDTO {
         this.receiverId = receiverId;
     }
 
+    public Integer getCount() {
+        return count;
+    }
+
+    public void setCount(Integer count) {
+        this.count = count;
+    }
+
     @Override
     public String toString() {
-        return "NotificationDTO{" + "id=" + id + ", date=" + date + ", category=" + category + ", message='" + message + '\'' + ", objectId=" + objectId + ", receiverId=" + receiverId + '}';
+        return "NotificationDTO{" + "id=" + id + ", date=" + date + ", category=" + category + ", message='" + message + '\'' + ", objectId=" + objectId + ", receiverId=" + receiverId + ", count=" + count + '}';
     }
 }
@@ -0,0 +1,10 @@
+package fr.polytech.model;
+
+/**
+ * What to do with a notification when the SSE buffer of a slow client is full.
+ */
+public enum OverflowPolicy {
+    DROP_OLDEST,
+    DROP_NEWEST,
+    COALESCE
+}
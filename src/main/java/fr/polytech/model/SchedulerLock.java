@@ -0,0 +1,50 @@
+package fr.polytech.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Lease on a periodic task shared by the nodes, so that the task runs on a single node at a time.
+ */
+@Document(collection = "scheduler_lock")
+public class SchedulerLock {
+
+    /**
+     * The task name.
+     */
+    @Id
+    private String id;
+
+    private String owner;
+
+    private Date lockedUntil;
+
+    public SchedulerLock() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public Date getLockedUntil() {
+        return lockedUntil;
+    }
+
+    public void setLockedUntil(Date lockedUntil) {
+        this.lockedUntil = lockedUntil;
+    }
+}
@@ -1,9 +1,64 @@
 package fr.polytech.repository;
 
 import fr.polytech.model.Notification;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Date;
 
 @Repository
-public interface NotificationRepository extends ReactiveMongoRepository<Notification, String> {
+public interface NotificationRepository extends ReactiveMongoRepository<Notification, String>, NotificationRepositoryCustom {
+
+    /**
+     * Get the most recent notifications of a receiver, served by the (receiverId, date, _id) index.
+     *
+     * @param receiverId The receiver id.
+     * @param pageable   The page size.
+     * @return A flux of notifications, newest first, then by descending id.
+     */
+    Flux<Notification> findByReceiverIdOrderByDateDescIdDesc(String receiverId, Pageable pageable);
+
+    /**
+     * Get the notifications of a receiver following a notification in the (date, id) descending order, served by
+     * the (receiverId, date, _id) index. The notifications with the same date as the given one and a lower id
+     * are included, so a page boundary between notifications of the same date skips none of them.
+     *
+     * @param receiverId The receiver id.
+     * @param date       The date of the last notification of the previous page.
+     * @param id         The id of the last notification of the previous page.
+     * @param pageable   The page size.
+     * @return A flux of notifications, newest first, then by descending id.
+     */
+    @Query(value = "{ 'receiverId': ?0, $or: [ { 'date': { $lt: ?1 } }, { 'date': ?1, '_id': { $lt: ?2 } } ] }",
+            sort = "{ 'date': -1, '_id': -1 }")
+    Flux<Notification> findByReceiverIdBefore(String receiverId, Date date, String id, Pageable pageable);
+
+    /**
+     * Get the notifications of a receiver following a notification in the (date, id) ascending order, served by
+     * the (receiverId, date, _id) index. The notifications with the same date as the given one and a higher id
+     * are included, so none of them is missed.
+     *
+     * @param receiverId The receiver id.
+     * @param date       The date of the given notification.
+     * @param id         The id of the given notification.
+     * @param pageable   The page size.
+     * @return A flux of notifications, oldest first, then by ascending id.
+     */
+    @Query(value = "{ 'receiverId': ?0, $or: [ { 'date': { $gt: ?1 } }, { 'date': ?1, '_id': { $gt: ?2 } } ] }",
+            sort = "{ 'date': 1, '_id': 1 }")
+    Flux<Notification> findByReceiverIdAfter(String receiverId, Date date, String id, Pageable pageable);
+
+    /**
+     * Count the unread notifications of a receiver, served by the (receiverId, read) index.
+     * Notifications stored before the read flag existed have no "read" field and are counted as unread.
+     *
+     * @param receiverId The receiver id.
+     * @return The number of unread notifications.
+     */
+    @Query(value = "{ 'receiverId': ?0, 'read': { $ne: true } }", count = true)
+    Mono<Long> countUnreadByReceiverId(String receiverId);
 }
@@ -0,0 +1,26 @@
+package fr.polytech.repository;
+
+import fr.polytech.model.Notification;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface NotificationRepositoryCustom {
+
+    /**
+     * Insert a notification unless a notification with the same id already exists.
+     * The existing notification, its read state included, is left untouched.
+     *
+     * @param notification The notification, with its id set.
+     * @return True if the notification was inserted, false if it already existed.
+     */
+    Mono<Boolean> insertIfAbsent(Notification notification);
+
+    /**
+     * Insert the notifications that do not exist yet with a single unordered bulk write.
+     *
+     * @param notifications The notifications, with their ids set.
+     * @return The notifications that were inserted.
+     */
+    Mono<List<Notification>> insertAllIfAbsent(List<Notification> notifications);
+}
@@ -0,0 +1,69 @@
+package fr.polytech.repository;
+
+import com.mongodb.bulk.BulkWriteUpsert;
+import fr.polytech.model.Notification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Idempotent inserts: upserts on the id that only set the fields when the document is created.
+ * A concurrent insert of the same id makes one of the upserts fail with a duplicate key, which means the
+ * notification already exists.
+ */
+public class NotificationRepositoryCustomImpl implements NotificationRepositoryCustom {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    public NotificationRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Mono<Boolean> insertIfAbsent(Notification notification) {
+        return reactiveMongoTemplate.upsert(byId(notification), setOnInsert(notification), Notification.class)
+                .map(result -> result.getUpsertedId() != null)
+                .onErrorReturn(DuplicateKeyException.class, false);
+    }
+
+    @Override
+    public Mono<List<Notification>> insertAllIfAbsent(List<Notification> notifications) {
+        if (notifications.isEmpty()) {
+            return Mono.just(List.of());
+        }
+        ReactiveBulkOperations bulkOperations = reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Notification.class);
+        notifications.forEach(notification -> bulkOperations.upsert(byId(notification), setOnInsert(notification)));
+        return bulkOperations.execute()
+                .map(result -> result.getUpserts().stream()
+                        .map(BulkWriteUpsert::getIndex)
+                        .map(notifications::get)
+                        .toList());
+    }
+
+    private Query byId(Notification notification) {
+        return Query.query(Criteria.where("_id").is(notification.getId()));
+    }
+
+    private Update setOnInsert(Notification notification) {
+        Update update = new Update()
+                .setOnInsert("date", notification.getDate())
+                .setOnInsert("category", notification.getCategory())
+                .setOnInsert("message", notification.getMessage())
+                .setOnInsert("objectId", notification.getObjectId())
+                .setOnInsert("receiverId", notification.getReceiverId())
+                .setOnInsert("read", false);
+        if (notification.getCount() != null) {
+            update.setOnInsert("count", notification.getCount());
+        }
+        return update;
+    }
+}
@@ -0,0 +1,9 @@
+package fr.polytech.repository;
+
+import fr.polytech.model.SubscribeToken;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SubscribeTokenRepository extends ReactiveMongoRepository<SubscribeToken, String> {
+}
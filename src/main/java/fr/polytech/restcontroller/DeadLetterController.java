@@ -0,0 +1,44 @@
+package fr.polytech.restcontroller;
+
+import fr.polytech.annotation.IsAdmin;
+import fr.polytech.service.DeadLetterService;
+import jakarta.ws.rs.Produces;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/api/v1/notification/dead-letter")
+public class DeadLetterController {
+
+    /**
+     * Initialize logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterController.class);
+
+    private final DeadLetterService deadLetterService;
+
+    @Autowired
+    public DeadLetterController(DeadLetterService deadLetterService) {
+        this.deadLetterService = deadLetterService;
+    }
+
+    /**
+     * Replay the records of the dead letter topic of a notification topic.
+     *
+     * @param topic      The notification topic, "offer-topic", "experience-creation-topic" or "broadcast-topic".
+     * @param maxRecords The maximum number of records to replay.
+     * @return The number of replayed records.
+     */
+    @PostMapping("/{topic}/replay")
+    @IsAdmin
+    @Produces(MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Integer> replay(@PathVariable String topic, @RequestParam(value = "max", required = false) Integer maxRecords) {
+        return deadLetterService.replay(topic, maxRecords)
+                .doOnSuccess(replayed -> logger.info("Replayed {} dead letters of topic {}", replayed, topic))
+                .doOnError(e -> logger.error("Error while replaying the dead letters of topic {}", topic, e));
+    }
+}
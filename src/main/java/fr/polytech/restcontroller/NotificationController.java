@@ -2,19 +2,28 @@ package fr.polytech.restcontroller;
 
 import fr.polytech.annotation.IsAdmin;
 import fr.polytech.annotation.IsSender;
+import fr.polytech.model.Broadcast;
+import fr.polytech.model.Category;
+import fr.polytech.model.InboxCursor;
 import fr.polytech.model.Notification;
+import fr.polytech.service.BroadcastService;
 import fr.polytech.service.NotificationService;
 import jakarta.ws.rs.Produces;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Date;
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/v1/notification")
 public class NotificationController {
@@ -24,11 +33,18 @@ public class NotificationController {
      */
     private static final Logger logger = LoggerFactory.getLogger(NotificationController.class);
 
+    /**
+     * Header carrying the cursor of the next inbox page.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final NotificationService notificationService;
+    private final BroadcastService broadcastService;
 
     @Autowired
-    public NotificationController(NotificationService notificationService) {
+    public NotificationController(NotificationService notificationService, BroadcastService broadcastService) {
         this.notificationService = notificationService;
+        this.broadcastService = broadcastService;
     }
 
     /**
@@ -45,6 +61,32 @@ public class NotificationController {
                 .doOnError(e -> logger.error("Error while getting all notifications", e));
     }
 
+    /**
+     * Export notifications as newline delimited JSON, streamed as they are read from the database.
+     * An interrupted export is resumed by passing the id of the last line received as "afterId".
+     *
+     * @param category   Only export the notifications of this category.
+     * @param receiverId Only export the notifications of this receiver.
+     * @param after      Only export the notifications from this date (ISO-8601).
+     * @param before     Only export the notifications older than this date (ISO-8601).
+     * @param afterId    Only export the notifications whose id follows this one.
+     * @param limit      The maximum number of notifications to export.
+     * @return A flux of notifications, one per line.
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @IsAdmin
+    @Produces(MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Notification> exportNotifications(@RequestParam(required = false) Category category,
+                                                  @RequestParam(required = false) String receiverId,
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date after,
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date before,
+                                                  @RequestParam(required = false) String afterId,
+                                                  @RequestParam(required = false) Integer limit) {
+        return notificationService.exportNotifications(category, receiverId, after, before, afterId, limit)
+                .doOnComplete(() -> logger.info("Successfully exported notifications"))
+                .doOnError(e -> logger.error("Error while exporting notifications", e));
+    }
+
     /**
      * Get a notification by its id.
      *
@@ -63,21 +105,139 @@ public class NotificationController {
     }
 
     /**
-     * Get all notifications by receiver id.
+     * Get a page of notifications by receiver id, newest first.
+     * The cursor of the next page is returned in the "X-Next-Cursor" header, and the next page is requested by
+     * passing it as "cursor". The cursor is opaque to the clients.
      *
      * @param userId The id of the receiver.
      * @param token  The token of the sender.
-     * @return A flux of notifications.
+     * @param limit  The maximum number of notifications to return.
+     * @param cursor The cursor returned with the previous page.
+     * @return The page of notifications.
      */
     @GetMapping("/user/{userId}")
     @IsSender
     @Produces(MediaType.APPLICATION_JSON_VALUE)
-    public Flux<Notification> getNotificationByReceiverId(@PathVariable String userId, @RequestHeader("Authorization") String token) {
-        return notificationService.getAllNotificationsByReceiverId(userId)
-                .doOnComplete(() -> logger.info("Successfully got all notifications by receiver id"))
+    public Mono<ResponseEntity<List<Notification>>> getNotificationByReceiverId(@PathVariable String userId, @RequestHeader("Authorization") String token,
+                                                                                @RequestParam(required = false) Integer limit,
+                                                                                @RequestParam(required = false) String cursor) {
+        return notificationService.getAllNotificationsByReceiverId(userId, limit, cursor)
+                .collectList()
+                .map(page -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                    if (!page.isEmpty() && page.get(page.size() - 1).getDate() != null) {
+                        response.header(NEXT_CURSOR_HEADER, InboxCursor.after(page.get(page.size() - 1)).encode());
+                    }
+                    return response.body(page);
+                })
+                .doOnSuccess(page -> logger.info("Successfully got all notifications by receiver id"))
                 .doOnError(e -> logger.error("Error while getting all notifications by receiver id", e));
     }
 
+    /**
+     * Get the number of unread notifications of a receiver.
+     *
+     * @param userId The id of the receiver.
+     * @param token  The token of the sender.
+     * @return The number of unread notifications.
+     */
+    @GetMapping("/user/{userId}/unread-count")
+    @IsSender
+    @Produces(MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Long> getUnreadCount(@PathVariable String userId, @RequestHeader("Authorization") String token) {
+        return notificationService.getUnreadCount(userId)
+                .doOnError(e -> logger.error("Error while getting the unread count", e));
+    }
+
+    /**
+     * Mark notifications of a receiver as read.
+     *
+     * @param userId The id of the receiver.
+     * @param token  The token of the sender.
+     * @param ids    The ids of the notifications to mark as read.
+     * @return The number of notifications marked as read.
+     */
+    @PutMapping("/user/{userId}/read")
+    @IsSender
+    @Produces(MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Long> markAsRead(@PathVariable String userId, @RequestHeader("Authorization") String token, @RequestBody List<String> ids) {
+        return notificationService.markAsRead(userId, ids)
+                .doOnSuccess(count -> logger.info("Marked {} notifications as read", count))
+                .doOnError(e -> logger.error("Error while marking notifications as read", e));
+    }
+
+    /**
+     * Mark all notifications of a receiver older than a date as read.
+     *
+     * @param userId The id of the receiver.
+     * @param token  The token of the sender.
+     * @param before The date (ISO-8601) before which notifications are marked as read.
+     * @return The number of notifications marked as read.
+     */
+    @PutMapping("/user/{userId}/read-all")
+    @IsSender
+    @Produces(MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Long> markAllAsRead(@PathVariable String userId, @RequestHeader("Authorization") String token,
+                                    @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date before) {
+        return notificationService.markAllAsRead(userId, before)
+                .doOnSuccess(count -> logger.info("Marked {} notifications as read", count))
+                .doOnError(e -> logger.error("Error while marking notifications as read", e));
+    }
+
+    /**
+     * Send a notification to every user, or to the users listed in "receiverIds".
+     *
+     * @param broadcast The broadcast to send.
+     * @return The saved broadcast.
+     */
+    @PostMapping("/broadcast")
+    @IsAdmin
+    @Produces(MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Broadcast> createBroadcast(@RequestBody Broadcast broadcast) {
+        return broadcastService.createBroadcast(broadcast)
+                .doOnSuccess(saved -> logger.info("Broadcast sent successfully"))
+                .doOnError(e -> logger.error("Error while sending the broadcast", e));
+    }
+
+    /**
+     * Delete notifications of a receiver by their ids.
+     *
+     * @param userId The id of the receiver.
+     * @param token  The token of the sender.
+     * @param ids    The ids of the notifications to delete.
+     * @return The number of deleted notifications.
+     */
+    @DeleteMapping("/user/{userId}/batch")
+    @IsSender
+    @Produces(MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Long> removeNotifications(@PathVariable String userId, @RequestHeader("Authorization") String token, @RequestBody List<String> ids) {
+        return notificationService.deleteNotifications(userId, ids)
+                .doOnSuccess(count -> logger.info("Removed {} notifications", count))
+                .doOnError(e -> logger.error("Error while removing notifications", e));
+    }
+
+    /**
+     * Delete the notifications of a receiver, optionally only those of a category or of a date range.
+     *
+     * @param userId   The id of the receiver.
+     * @param token    The token of the sender.
+     * @param category Only delete the notifications of this category.
+     * @param after    Only delete the notifications from this date (ISO-8601).
+     * @param before   Only delete the notifications older than this date (ISO-8601).
+     * @return The number of deleted notifications.
+     */
+    @DeleteMapping("/user/{userId}")
+    @IsSender
+    @Produces(MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Long> removeAllNotifications(@PathVariable String userId, @RequestHeader("Authorization") String token,
+                                             @RequestParam(required = false) Category category,
+                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date after,
+                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date before) {
+        return notificationService.deleteNotifications(userId, category, after, before)
+                .doOnSuccess(count -> logger.info("Removed {} notifications", count))
+                .doOnError(e -> logger.error("Error while removing notifications", e));
+    }
+
     /**
      * Delete a notification by its id.
      *
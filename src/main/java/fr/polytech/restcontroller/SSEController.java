@@ -1,8 +1,10 @@
 package fr.polytech.restcontroller;
 
 import fr.polytech.annotation.IsSender;
-import fr.polytech.model.NotificationDTO;
+import fr.polytech.service.NotificationEncoder;
+import fr.polytech.service.NotificationMetrics;
 import fr.polytech.service.SSEService;
+import fr.polytech.service.SubscribeTokenService;
 import jakarta.ws.rs.Produces;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,14 +15,11 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
+import reactor.core.publisher.Mono;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 @RestController
 @RequestMapping("/api/v1/notification/sse")
@@ -31,16 +30,15 @@ public class SSEController {
      */
     private static final Logger logger = LoggerFactory.getLogger(SSEController.class);
 
-    /**
-     * Map a unique token to a user id.
-     */
-    private final Map<String, UUID> uniqueUrlToUserIdMap = new ConcurrentHashMap<>();
-
     private final SSEService sseService;
+    private final SubscribeTokenService subscribeTokenService;
+    private final NotificationMetrics notificationMetrics;
 
     @Autowired
-    public SSEController(SSEService sseService) {
+    public SSEController(SSEService sseService, SubscribeTokenService subscribeTokenService, NotificationMetrics notificationMetrics) {
         this.sseService = sseService;
+        this.subscribeTokenService = subscribeTokenService;
+        this.notificationMetrics = notificationMetrics;
     }
 
     /**
@@ -53,78 +51,53 @@ public class SSEController {
     @PostMapping("/proxy/{userId}")
     @Produces(MediaType.TEXT_PLAIN_VALUE)
     @IsSender
-    public ResponseEntity<String> proxy(@PathVariable UUID userId, @RequestHeader("Authorization") String token) {
-        String uniqueToken = generateUniqueToken(userId);
-        uniqueUrlToUserIdMap.put(uniqueToken, userId);
-        return ResponseEntity.ok(uniqueToken);
-    }
-
-    /**
-     * Generate a unique token for the user. This token is a hash of the user id and a random string.
-     * This token is used to identify the user in the SSE stream.
-     *
-     * @param userId The user id.
-     * @return The unique token.
-     */
-    private String generateUniqueToken(UUID userId) {
-        String toHash = userId.toString() + "-" + UUID.randomUUID();
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(toHash.getBytes());
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            // If the algorithm does not exist, we return the string as is.
-            return toHash;
-        }
+    public Mono<ResponseEntity<String>> proxy(@PathVariable UUID userId, @RequestHeader("Authorization") String token) {
+        return subscribeTokenService.createToken(userId)
+                .map(ResponseEntity::ok)
+                .doOnError(e -> logger.error("Error while creating the subscribe token", e));
     }
 
     /**
      * Stream events to the user.
+     * A reconnecting client can give the id of the last event it received, either with the standard
+     * Last-Event-ID header or with the lastEventId parameter, to receive the notifications it missed.
+     * The token stays valid while the stream is open and for a grace period after it closes, so a client
+     * reconnects with the same URL.
+     * With "encoding=cbor", the data of each event is the Base64 text of the CBOR encoding of the notification
+     * instead of its JSON form.
      *
-     * @param uniqueToken The unique token of the user.
+     * @param uniqueToken      The unique token of the user.
+     * @param lastEventId      The id of the last event received, from the Last-Event-ID header.
+     * @param lastEventIdParam The id of the last event received, from the query string.
+     * @param encoding         The encoding of the notifications, "cbor" or JSON by default.
      * @return A flux of server sent events.
      */
     @GetMapping("/subscribe/{uniqueToken}")
     @Produces(MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<ServerSentEvent<NotificationDTO>> streamEvents(@PathVariable String uniqueToken) {
-        UUID userId = uniqueUrlToUserIdMap.get(uniqueToken);
-        if (userId == null) {
-            return Flux.error(new WebClientResponseException(HttpStatus.NOT_FOUND.value(),
-                    HttpStatus.NOT_FOUND.getReasonPhrase(), null, null, null));
-        }
-
-        Sinks.Many<NotificationDTO> sink = sseService.registerUser(userId);
-
-        Flux<ServerSentEvent<NotificationDTO>> initialEvent = Flux.just(
-                ServerSentEvent.<NotificationDTO>builder()
-                        .event("connected")
-                        .data(null)
-                        .build()
-        );
-
-        return initialEvent.concatWith(createSseFlux(sink, userId, uniqueToken));
-    }
+    public Flux<ServerSentEvent<String>> streamEvents(@PathVariable String uniqueToken,
+                                                      @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                                      @RequestParam(value = "lastEventId", required = false) String lastEventIdParam,
+                                                      @RequestParam(value = "encoding", required = false) String encoding) {
+        String resumeFrom = lastEventId != null ? lastEventId : lastEventIdParam;
+        boolean cbor = NotificationEncoder.CBOR_ENCODING.equalsIgnoreCase(encoding);
+        return subscribeTokenService.getUserId(uniqueToken)
+                .doOnSuccess(userId -> notificationMetrics.recordSubscription(userId != null))
+                .switchIfEmpty(Mono.error(new WebClientResponseException(HttpStatus.NOT_FOUND.value(),
+                        HttpStatus.NOT_FOUND.getReasonPhrase(), null, null, null)))
+                .flatMapMany(userId -> {
+                    Flux<ServerSentEvent<String>> initialEvent = Flux.just(
+                            ServerSentEvent.<String>builder()
+                                    .event("connected")
+                                    .data(null)
+                                    .build()
+                    );
 
-    /**
-     * Create a flux of server sent events from a sink.
-     *
-     * @param sink        The sink.
-     * @param userId      The user id.
-     * @param uniqueToken The unique token.
-     * @return A flux of server sent events.
-     */
-    private Flux<ServerSentEvent<NotificationDTO>> createSseFlux(Sinks.Many<NotificationDTO> sink, UUID userId, String uniqueToken) {
-        return sink.asFlux()
-                .map(notification -> ServerSentEvent.builder(notification).build())
-                .doOnCancel(() -> {
-                    sseService.unregisterUser(userId);
-                    uniqueUrlToUserIdMap.remove(uniqueToken);
+                    Disposable keepAlive = subscribeTokenService.keepAlive(uniqueToken);
+                    return initialEvent.concatWith(sseService.registerUser(userId, resumeFrom, cbor))
+                            .doFinally(signal -> {
+                                keepAlive.dispose();
+                                subscribeTokenService.release(uniqueToken);
+                            });
                 });
     }
 }
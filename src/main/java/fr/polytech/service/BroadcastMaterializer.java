@@ -0,0 +1,130 @@
+package fr.polytech.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fr.polytech.model.Broadcast;
+import fr.polytech.model.BroadcastCursor;
+import fr.polytech.repository.NotificationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Write the broadcasts in the inbox of a user when the user reads it, instead of writing one notification per
+ * receiver when the broadcast is sent.
+ * <p>
+ * The date of the last broadcast written for each user is stored in a cursor and cached, and every node knows
+ * the date of the latest broadcast, so reading an inbox costs nothing more unless a broadcast was sent since
+ * the last read. Broadcasts older than the retention are removed by a TTL index and are not written anymore.
+ */
+@Service
+public class BroadcastMaterializer {
+
+    /**
+     * Initialize logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(BroadcastMaterializer.class);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final NotificationRepository notificationRepository;
+    private final Cache<String, Date> cursors;
+    private final AtomicReference<Date> latestBroadcastDate = new AtomicReference<>(new Date(0));
+
+    @Value("${notification.broadcast.retention:30d}")
+    private Duration retention;
+
+    @Autowired
+    public BroadcastMaterializer(ReactiveMongoTemplate reactiveMongoTemplate, NotificationRepository notificationRepository,
+                                 @Value("${notification.broadcast.cursors.max-size:100000}") long maxCursors) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.notificationRepository = notificationRepository;
+        this.cursors = Caffeine.newBuilder().maximumSize(maxCursors).build();
+    }
+
+    /**
+     * Create the TTL index of the broadcasts and load the date of the latest broadcast.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        reactiveMongoTemplate.indexOps(Broadcast.class)
+                .ensureIndex(new Index().on("date", Sort.Direction.ASC).named("date_ttl").expire(retention))
+                .then(reactiveMongoTemplate.findOne(new Query().with(Sort.by(Sort.Direction.DESC, "date")).limit(1), Broadcast.class))
+                .subscribe(broadcast -> advance(broadcast.getDate()),
+                        throwable -> logger.error("Error while initializing the broadcasts", throwable));
+    }
+
+    /**
+     * Record that a broadcast has been sent.
+     *
+     * @param date The date of the broadcast.
+     */
+    public void advance(Date date) {
+        latestBroadcastDate.accumulateAndGet(date, (latest, next) -> next.after(latest) ? next : latest);
+    }
+
+    /**
+     * Write in the inbox of a user the broadcasts sent to it since its cursor.
+     *
+     * @param userId The user id.
+     * @return Nothing, once the broadcasts have been written.
+     */
+    public Mono<Void> materialize(String userId) {
+        Date latest = latestBroadcastDate.get();
+        Date cursor = cursors.getIfPresent(userId);
+        if (cursor != null && !cursor.before(latest)) {
+            return Mono.empty();
+        }
+        return (cursor != null ? Mono.just(cursor) : loadCursor(userId))
+                .flatMap(from -> from.before(latest) ? materialize(userId, from, latest) : Mono.just(from))
+                .doOnNext(date -> cursors.put(userId, date))
+                .then();
+    }
+
+    /**
+     * Load the cursor of a user. A user without a cursor gets the broadcasts still within the retention.
+     *
+     * @param userId The user id.
+     * @return The date up to which the broadcasts have been written.
+     */
+    private Mono<Date> loadCursor(String userId) {
+        return reactiveMongoTemplate.findById(userId, BroadcastCursor.class)
+                .map(BroadcastCursor::getDate)
+                .defaultIfEmpty(new Date(System.currentTimeMillis() - retention.toMillis()));
+    }
+
+    /**
+     * Write the broadcasts of a user sent after a date, then move its cursor.
+     *
+     * @param userId The user id.
+     * @param from   Exclusive lower bound on the broadcast date.
+     * @param to     Inclusive upper bound on the broadcast date.
+     * @return The new cursor of the user.
+     */
+    private Mono<Date> materialize(String userId, Date from, Date to) {
+        Query query = Query.query(Criteria.where("date").gt(from).lte(to)
+                .orOperator(Criteria.where("receiverIds").exists(false), Criteria.where("receiverIds").is(userId)));
+        return reactiveMongoTemplate.find(query, Broadcast.class)
+                .map(broadcast -> broadcast.toNotification(userId))
+                .collectList()
+                .flatMap(notificationRepository::insertAllIfAbsent)
+                .doOnNext(inserted -> logger.debug("Wrote {} broadcasts in the inbox of user {}", inserted.size(), userId))
+                .then(reactiveMongoTemplate.upsert(Query.query(Criteria.where("_id").is(userId)),
+                        new Update().max("date", to), BroadcastCursor.class))
+                .thenReturn(to);
+    }
+}
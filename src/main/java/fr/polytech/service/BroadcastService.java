@@ -0,0 +1,138 @@
+package fr.polytech.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import fr.polytech.model.Broadcast;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.errors.SerializationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.retry.annotation.Backoff;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Send a notification to every user or to a list of users with a single write and a single message on the bus,
+ * instead of one notification per receiver.
+ * Broadcasts are received from the topic "broadcast-topic" or created by an admin.
+ */
+@Service
+public class BroadcastService {
+
+    /**
+     * Initialize logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(BroadcastService.class);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final NotificationBus notificationBus;
+    private final NotificationMetrics notificationMetrics;
+    private final DeadLetterService deadLetterService;
+    private final ObjectReader broadcastReader;
+
+    @Autowired
+    public BroadcastService(ReactiveMongoTemplate reactiveMongoTemplate, NotificationBus notificationBus, NotificationMetrics notificationMetrics,
+                            DeadLetterService deadLetterService, ObjectMapper objectMapper) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.notificationBus = notificationBus;
+        this.notificationMetrics = notificationMetrics;
+        this.deadLetterService = deadLetterService;
+        this.broadcastReader = objectMapper.readerFor(Broadcast.class);
+    }
+
+    /**
+     * Listen to the topic "broadcast-topic" and its retry topics, and send the broadcast to its receivers.
+     * A broadcast that cannot be saved is retried from the retry topics like the notifications of "offer-topic",
+     * and ends up in the dead letter topic when the attempts are exhausted, from where it can be replayed.
+     * A record that cannot be parsed goes straight to the dead letter topic.
+     *
+     * @param record The record received from the topic.
+     */
+    @RetryableTopic(attempts = "${notification.kafka.retry.attempts:4}",
+            backoff = @Backoff(delayExpression = "${notification.kafka.retry.delay-ms:1000}",
+                    multiplierExpression = "${notification.kafka.retry.multiplier:2}",
+                    maxDelayExpression = "${notification.kafka.retry.max-delay-ms:30000}"),
+            kafkaTemplate = "deadLetterKafkaTemplate",
+            dltTopicSuffix = "${notification.kafka.dead-letter-suffix:.DLT}",
+            exclude = SerializationException.class,
+            traversingCauses = "true",
+            autoStartDltHandler = "false")
+    @KafkaListener(topics = KafkaService.BROADCAST_TOPIC, groupId = "notification", containerFactory = "notificationKafkaListenerContainerFactory")
+    public void listenBroadcast(ConsumerRecord<String, byte[]> record) {
+        if (record.topic().equals(KafkaService.BROADCAST_TOPIC)) {
+            notificationMetrics.recordConsumed(KafkaService.BROADCAST_TOPIC);
+        }
+        Broadcast broadcast;
+        try {
+            broadcast = broadcastReader.readValue(record.value());
+            validate(broadcast);
+        } catch (IOException | IllegalArgumentException e) {
+            deadLetterService.deadLetter(record, new SerializationException("Invalid broadcast record", e));
+            return;
+        }
+        broadcast.setId(KafkaService.sourceEventId(record));
+        createBroadcast(broadcast).block();
+    }
+
+    /**
+     * Save a broadcast and send it to its receivers through every node.
+     * A broadcast whose id already exists is a redelivery and is dropped.
+     *
+     * @param broadcast The broadcast.
+     * @return The saved broadcast, empty if it is a duplicate.
+     * @throws WebClientResponseException If the broadcast is invalid.
+     */
+    public Mono<Broadcast> createBroadcast(Broadcast broadcast) {
+        try {
+            validate(broadcast);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(new WebClientResponseException(HttpStatus.BAD_REQUEST.value(),
+                    HttpStatus.BAD_REQUEST.getReasonPhrase(), null, null, null));
+        }
+        if (broadcast.getId() == null) {
+            broadcast.setId(UUID.randomUUID().toString());
+        }
+        if (broadcast.getReceiverIds() != null && broadcast.getReceiverIds().isEmpty()) {
+            broadcast.setReceiverIds(null);
+        }
+        broadcast.setDate(new Date());
+
+        return reactiveMongoTemplate.insert(broadcast)
+                .doOnNext(saved -> {
+                    logger.info("Sending broadcast {} to {}", saved.getId(),
+                            saved.getReceiverIds() == null ? "every user" : saved.getReceiverIds().size() + " user(s)");
+                    notificationBus.publish(saved);
+                })
+                .onErrorResume(DuplicateKeyException.class, e -> {
+                    logger.info("Dropping duplicate broadcast {}", broadcast.getId());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Reject the broadcasts that could not be sent.
+     *
+     * @param broadcast The broadcast.
+     * @throws IllegalArgumentException If the category, the message or the object is missing, or an id is not a UUID.
+     */
+    private void validate(Broadcast broadcast) {
+        if (broadcast.getCategory() == null || broadcast.getMessage() == null || broadcast.getObjectId() == null) {
+            throw new IllegalArgumentException("Missing category, message or objectId");
+        }
+        UUID.fromString(broadcast.getObjectId());
+        if (broadcast.getReceiverIds() != null) {
+            broadcast.getReceiverIds().forEach(UUID::fromString);
+        }
+    }
+}
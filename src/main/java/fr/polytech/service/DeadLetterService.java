@@ -0,0 +1,208 @@
+package fr.polytech.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.polytech.model.Notification;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.http.HttpStatus;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Send the records that cannot be turned into notifications to the dead letter topic of their topic,
+ * instead of dropping them, and replay them once the cause has been fixed.
+ */
+@Service
+public class DeadLetterService {
+
+    /**
+     * Initialize logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterService.class);
+
+    private static final String REPLAY_GROUP_ID = "notification-dead-letter-replay";
+
+    private static final String EXCEPTION_HEADER_PREFIX = KafkaHeaders.PREFIX + "dlt-exception";
+
+    private static final Set<String> REPLAYABLE_TOPICS = Set.of(KafkaService.OFFER_TOPIC, KafkaService.EXPERIENCE_TOPIC, KafkaService.BROADCAST_TOPIC);
+
+    private final DeadLetterPublishingRecoverer deadLetterPublishingRecoverer;
+    private final KafkaTemplate<String, byte[]> deadLetterKafkaTemplate;
+    private final ConsumerFactory<String, byte[]> replayConsumerFactory;
+    private final NotificationMetrics notificationMetrics;
+    private final ObjectMapper objectMapper;
+
+    @Value("${notification.kafka.dead-letter-suffix:.DLT}")
+    private String deadLetterSuffix;
+
+    @Value("${notification.kafka.dead-letter.replay.max-records:500}")
+    private int maxReplayRecords;
+
+    @Value("${notification.kafka.dead-letter.replay.poll-timeout-ms:1000}")
+    private long replayPollTimeoutMs;
+
+    @Autowired
+    public DeadLetterService(DeadLetterPublishingRecoverer deadLetterPublishingRecoverer, KafkaTemplate<String, byte[]> deadLetterKafkaTemplate,
+                             KafkaProperties kafkaProperties, NotificationMetrics notificationMetrics, ObjectMapper objectMapper) {
+        this.deadLetterPublishingRecoverer = deadLetterPublishingRecoverer;
+        this.deadLetterKafkaTemplate = deadLetterKafkaTemplate;
+        this.notificationMetrics = notificationMetrics;
+        this.objectMapper = objectMapper;
+
+        Map<String, Object> consumerProperties = kafkaProperties.buildConsumerProperties();
+        consumerProperties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        consumerProperties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        this.replayConsumerFactory = new DefaultKafkaConsumerFactory<>(consumerProperties, new StringDeserializer(), new ByteArrayDeserializer());
+    }
+
+    /**
+     * Send a record to the dead letter topic of its topic.
+     * For a record that failed deserialization, the original bytes are sent with the exception in the headers.
+     *
+     * @param record    The record.
+     * @param exception The reason why the record could not be processed.
+     */
+    public void deadLetter(ConsumerRecord<?, ?> record, Exception exception) {
+        logger.warn("Sending record {}-{}@{} to the dead letter topic: {}", record.topic(), record.partition(), record.offset(),
+                exception.getMessage());
+        notificationMetrics.recordParseFailure(record.topic());
+        deadLetterPublishingRecoverer.accept(record, exception);
+    }
+
+    /**
+     * Send a notification built by this service, such as a merged notification that could not be saved, to the
+     * dead letter topic of "offer-topic", whose records have the format of a notification. Its id is sent as the
+     * event id, so a replayed notification keeps a stable id.
+     *
+     * @param notification The notification.
+     * @param exception    The reason why the notification could not be saved.
+     * @return Completes once the dead letter is acknowledged by the broker.
+     */
+    public Mono<Void> deadLetter(Notification notification, Throwable exception) {
+        byte[] value;
+        try {
+            value = objectMapper.writeValueAsBytes(notification);
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(KafkaService.OFFER_TOPIC + deadLetterSuffix, notification.getReceiverId(), value);
+        record.headers().add(KafkaService.EVENT_ID_HEADER, notification.getId().getBytes(StandardCharsets.UTF_8));
+        record.headers().add(KafkaHeaders.DLT_EXCEPTION_FQCN, exception.getClass().getName().getBytes(StandardCharsets.UTF_8));
+        record.headers().add(KafkaHeaders.DLT_EXCEPTION_MESSAGE, String.valueOf(exception.getMessage()).getBytes(StandardCharsets.UTF_8));
+        logger.warn("Sending notification {} to the dead letter topic: {}", notification.getId(), exception.getMessage());
+        return Mono.fromFuture(() -> deadLetterKafkaTemplate.send(record)).then();
+    }
+
+    /**
+     * Publish the records of the dead letter topic of a topic back to that topic, oldest first.
+     * The replayed records are committed by a dedicated consumer group, so each record is replayed once
+     * and a later replay continues where this one stopped. The headers describing the original record are kept
+     * so that a replayed record gets the id of the original record. A replayed broadcast gets the id of the
+     * original broadcast too, so it is dropped as a duplicate if it was saved before being dead lettered.
+     *
+     * @param topic      The topic whose dead letters are replayed.
+     * @param maxRecords The maximum number of records to replay, the configured maximum if null.
+     * @return The number of replayed records.
+     * @throws WebClientResponseException If the topic is not a notification or broadcast topic.
+     */
+    public Mono<Integer> replay(String topic, Integer maxRecords) {
+        if (!REPLAYABLE_TOPICS.contains(topic)) {
+            return Mono.error(new WebClientResponseException(HttpStatus.BAD_REQUEST.value(),
+                    HttpStatus.BAD_REQUEST.getReasonPhrase(), null, null, null));
+        }
+        int limit = maxRecords == null ? maxReplayRecords : Math.max(1, Math.min(maxRecords, maxReplayRecords));
+        return Mono.fromCallable(() -> replayBlocking(topic, limit))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Replay the dead letters of a topic with a short-lived consumer assigned to every partition of the dead letter topic.
+     * Offsets are only committed once the replayed records have been acknowledged by the broker.
+     *
+     * @param topic      The topic whose dead letters are replayed.
+     * @param maxRecords The maximum number of records to replay.
+     * @return The number of replayed records.
+     */
+    private int replayBlocking(String topic, int maxRecords) {
+        String deadLetterTopic = topic + deadLetterSuffix;
+        try (Consumer<String, byte[]> consumer = replayConsumerFactory.createConsumer(REPLAY_GROUP_ID, null)) {
+            List<TopicPartition> partitions = new ArrayList<>();
+            for (PartitionInfo partition : consumer.partitionsFor(deadLetterTopic)) {
+                partitions.add(new TopicPartition(deadLetterTopic, partition.partition()));
+            }
+            consumer.assign(partitions);
+
+            Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+            List<CompletableFuture<SendResult<String, byte[]>>> sends = new ArrayList<>();
+            ConsumerRecords<String, byte[]> records = consumer.poll(Duration.ofMillis(replayPollTimeoutMs));
+            while (!records.isEmpty() && sends.size() < maxRecords) {
+                for (ConsumerRecord<String, byte[]> record : records) {
+                    if (sends.size() == maxRecords) {
+                        break;
+                    }
+                    sends.add(deadLetterKafkaTemplate.send(new ProducerRecord<>(topic, null, record.key(), record.value(),
+                            replayHeaders(record))));
+                    offsets.put(new TopicPartition(record.topic(), record.partition()), new OffsetAndMetadata(record.offset() + 1));
+                }
+                records = sends.size() < maxRecords ? consumer.poll(Duration.ofMillis(replayPollTimeoutMs)) : ConsumerRecords.empty();
+            }
+
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).join();
+            if (!offsets.isEmpty()) {
+                consumer.commitSync(offsets);
+            }
+            logger.info("Replayed {} records from {} to {}", sends.size(), deadLetterTopic, topic);
+            return sends.size();
+        }
+    }
+
+    /**
+     * Headers of a replayed record: those of the dead letter without the exception details.
+     *
+     * @param record The dead letter.
+     * @return The headers of the replayed record.
+     */
+    private Headers replayHeaders(ConsumerRecord<String, byte[]> record) {
+        Headers headers = new RecordHeaders();
+        for (Header header : record.headers()) {
+            if (!header.key().startsWith(EXCEPTION_HEADER_PREFIX)) {
+                headers.add(header);
+            }
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,107 @@
+package fr.polytech.service;
+
+import com.auth0.jwt.JWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of what is read from a JWT on every authenticated request: the subject, the principal name
+ * and the granted authorities. Entries are keyed by the SHA-256 hash of the token and expire with the token,
+ * so the same token is decoded once and not again by the security method checks or the services.
+ * <p>
+ * Only tokens that passed the validation of the resource server are cached, by {@code JwtAuthConverter}.
+ */
+@Service
+public class DecodedTokenCache {
+
+    /**
+     * Values read from a validated JWT.
+     *
+     * @param subject       The subject of the token.
+     * @param principalName The name of the authenticated principal.
+     * @param authorities   The granted authorities.
+     * @param expiresAt     The expiration of the token, null if it has none.
+     */
+    public record DecodedToken(String subject, String principalName, Collection<GrantedAuthority> authorities, Instant expiresAt) {
+    }
+
+    private final Cache<ByteBuffer, DecodedToken> tokens;
+
+    @Autowired
+    public DecodedTokenCache(@Value("${notification.security.token-cache.max-size:10000}") long maxSize,
+                             @Value("${notification.security.token-cache.default-ttl-ms:300000}") long defaultTtlMs) {
+        this.tokens = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<ByteBuffer, DecodedToken>() {
+                    @Override
+                    public long expireAfterCreate(ByteBuffer key, DecodedToken token, long currentTime) {
+                        if (token.expiresAt() == null) {
+                            return Duration.ofMillis(defaultTtlMs).toNanos();
+                        }
+                        return Math.max(0, Duration.between(Instant.now(), token.expiresAt()).toNanos());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(ByteBuffer key, DecodedToken token, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, token, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(ByteBuffer key, DecodedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Get the decoded values of a token, decoding it on a miss.
+     *
+     * @param token   The raw token, without the "Bearer " prefix.
+     * @param decoder The decoder of the token, called on a miss.
+     * @return The decoded values.
+     */
+    public DecodedToken get(String token, Function<String, DecodedToken> decoder) {
+        return tokens.get(hash(token), key -> decoder.apply(token));
+    }
+
+    /**
+     * Get the subject of a token. The token of the current request has been cached while authenticating it,
+     * another token is decoded without being cached since it has not been validated.
+     *
+     * @param token The raw token, without the "Bearer " prefix.
+     * @return The subject of the token.
+     */
+    public String subject(String token) {
+        DecodedToken decodedToken = tokens.getIfPresent(hash(token));
+        return decodedToken != null ? decodedToken.subject() : JWT.decode(token).getSubject();
+    }
+
+    /**
+     * Hash a token into a cache key, so that raw tokens are not kept as keys.
+     *
+     * @param token The raw token.
+     * @return The SHA-256 hash of the token.
+     */
+    private static ByteBuffer hash(String token) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
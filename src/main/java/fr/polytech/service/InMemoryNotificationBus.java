@@ -0,0 +1,53 @@
+package fr.polytech.service;
+
+import fr.polytech.model.Broadcast;
+import fr.polytech.model.NotificationDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * Single node bus dispatching the notifications directly on the local node.
+ * Used for tests and for deployments with a single replica.
+ */
+@Service
+@ConditionalOnProperty(name = "notification.bus.type", havingValue = "memory")
+public class InMemoryNotificationBus implements NotificationBus {
+
+    private final NotificationDispatcher notificationDispatcher;
+
+    @Autowired
+    public InMemoryNotificationBus(NotificationDispatcher notificationDispatcher) {
+        this.notificationDispatcher = notificationDispatcher;
+    }
+
+    /**
+     * Dispatch the notification on this node.
+     *
+     * @param notification The notification to deliver.
+     */
+    @Override
+    public void publish(NotificationDTO notification) {
+        notificationDispatcher.dispatch(notification, System.currentTimeMillis());
+    }
+
+    /**
+     * Dispatch the broadcast on this node.
+     *
+     * @param broadcast The broadcast to deliver.
+     */
+    @Override
+    public void publish(Broadcast broadcast) {
+        notificationDispatcher.dispatchBroadcast(broadcast, System.currentTimeMillis());
+    }
+
+    /**
+     * Dispatch the change on this node.
+     *
+     * @param receiverId The receiver id.
+     */
+    @Override
+    public void publishChange(String receiverId) {
+        notificationDispatcher.dispatchChange(receiverId);
+    }
+}
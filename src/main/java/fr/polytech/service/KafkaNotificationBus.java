@@ -0,0 +1,157 @@
+package fr.polytech.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.polytech.model.Broadcast;
+import fr.polytech.model.NotificationDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Service;
+
+/**
+ * Bus delivering the notifications to every node through a Kafka topic.
+ * Each node consumes the topic with its own consumer group, so every node receives every notification.
+ * The group is named after the instance id of the node, its host name by default, so a restarted node joins its
+ * previous group instead of leaving an orphaned group behind. Nodes sharing a host name must set
+ * "notification.bus.instance-id".
+ */
+@Service
+@ConditionalOnProperty(name = "notification.bus.type", havingValue = "kafka", matchIfMissing = true)
+public class KafkaNotificationBus implements NotificationBus {
+
+    /**
+     * Initialize logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(KafkaNotificationBus.class);
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private final NotificationDispatcher notificationDispatcher;
+
+    @Value("${notification.bus.topic:notification-delivery-topic}")
+    private String topic;
+
+    @Value("${notification.bus.broadcast-topic:notification-broadcast-delivery-topic}")
+    private String broadcastTopic;
+
+    @Value("${notification.bus.change-topic:notification-change-topic}")
+    private String changeTopic;
+
+    @Autowired
+    public KafkaNotificationBus(KafkaTemplate<String, String> kafkaTemplate, ObjectMapper objectMapper, NotificationDispatcher notificationDispatcher) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+        this.notificationDispatcher = notificationDispatcher;
+    }
+
+    /**
+     * Publish the notification on the delivery topic, keyed by receiver id.
+     *
+     * @param notification The notification to deliver.
+     */
+    @Override
+    public void publish(NotificationDTO notification) {
+        try {
+            String message = objectMapper.writeValueAsString(notification);
+            kafkaTemplate.send(topic, notification.getReceiverId().toString(), message)
+                    .whenComplete((result, throwable) -> {
+                        if (throwable != null) {
+                            logger.error("Error while publishing notification {}", notification.getId(), throwable);
+                        }
+                    });
+        } catch (JsonProcessingException e) {
+            logger.error("Error while serializing notification", e);
+        }
+    }
+
+    /**
+     * Publish the broadcast on the broadcast delivery topic.
+     *
+     * @param broadcast The broadcast to deliver.
+     */
+    @Override
+    public void publish(Broadcast broadcast) {
+        try {
+            String message = objectMapper.writeValueAsString(broadcast);
+            kafkaTemplate.send(broadcastTopic, broadcast.getId(), message)
+                    .whenComplete((result, throwable) -> {
+                        if (throwable != null) {
+                            logger.error("Error while publishing broadcast {}", broadcast.getId(), throwable);
+                        }
+                    });
+        } catch (JsonProcessingException e) {
+            logger.error("Error while serializing broadcast", e);
+        }
+    }
+
+    /**
+     * Publish the change on the change topic, keyed by receiver id.
+     *
+     * @param receiverId The receiver id.
+     */
+    @Override
+    public void publishChange(String receiverId) {
+        kafkaTemplate.send(changeTopic, receiverId, receiverId)
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        logger.error("Error while publishing change of receiver {}", receiverId, throwable);
+                    }
+                });
+    }
+
+    /**
+     * Listen to the delivery topic with the consumer group of this node and dispatch the notifications
+     * on this node.
+     *
+     * @param message   The message received from the topic.
+     * @param timestamp The timestamp of the record, the time the notification was published.
+     */
+    @KafkaListener(topics = "${notification.bus.topic:notification-delivery-topic}",
+            groupId = "notification-delivery-${notification.bus.instance-id:${HOSTNAME:${random.uuid}}}",
+            properties = "auto.offset.reset=latest")
+    public void listenDelivery(String message, @Header(KafkaHeaders.RECEIVED_TIMESTAMP) long timestamp) {
+        try {
+            notificationDispatcher.dispatch(objectMapper.readValue(message, NotificationDTO.class), timestamp);
+        } catch (JsonProcessingException e) {
+            logger.error("Error while parsing delivered notification", e);
+        }
+    }
+
+    /**
+     * Listen to the broadcast delivery topic with the consumer group of this node and dispatch the broadcasts
+     * on this node.
+     *
+     * @param message   The message received from the topic.
+     * @param timestamp The timestamp of the record, the time the broadcast was published.
+     */
+    @KafkaListener(topics = "${notification.bus.broadcast-topic:notification-broadcast-delivery-topic}",
+            groupId = "notification-broadcast-delivery-${notification.bus.instance-id:${HOSTNAME:${random.uuid}}}",
+            properties = "auto.offset.reset=latest")
+    public void listenBroadcastDelivery(String message, @Header(KafkaHeaders.RECEIVED_TIMESTAMP) long timestamp) {
+        try {
+            notificationDispatcher.dispatchBroadcast(objectMapper.readValue(message, Broadcast.class), timestamp);
+        } catch (JsonProcessingException e) {
+            logger.error("Error while parsing delivered broadcast", e);
+        }
+    }
+
+    /**
+     * Listen to the change topic with the consumer group of this node and drop the state held by this node for
+     * the receiver.
+     *
+     * @param receiverId The id of the receiver whose notifications have been read or deleted.
+     */
+    @KafkaListener(topics = "${notification.bus.change-topic:notification-change-topic}",
+            groupId = "notification-change-${notification.bus.instance-id:${HOSTNAME:${random.uuid}}}",
+            properties = "auto.offset.reset=latest")
+    public void listenChange(String receiverId) {
+        notificationDispatcher.dispatchChange(receiverId);
+    }
+}
@@ -1,18 +1,31 @@
 package fr.polytech.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import fr.polytech.model.Category;
-import fr.polytech.model.ExperienceDTOWithUserId;
-import fr.polytech.model.NotificationDTO;
+import fr.polytech.config.NotificationDeserializer;
+import fr.polytech.model.Notification;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.retry.annotation.Backoff;
 import org.springframework.stereotype.Service;
 
-import java.util.Date;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 @Service
@@ -23,78 +36,204 @@ public class KafkaService {
      */
     private static final Logger logger = LoggerFactory.getLogger(KafkaService.class);
 
-    private final NotificationService notificationService;
-    private final ObjectMapper objectMapper;
+    public static final String OFFER_TOPIC = "offer-topic";
+    public static final String EXPERIENCE_TOPIC = "experience-creation-topic";
+    public static final String BROADCAST_TOPIC = "broadcast-topic";
+
+    /**
+     * Header in which producers can give a unique id to their events.
+     */
+    public static final String EVENT_ID_HEADER = "event-id";
+
+    private final NotificationCoalescer notificationCoalescer;
+    private final NotificationMetrics notificationMetrics;
+    private final DeadLetterService deadLetterService;
+    private final NotificationDeserializer notificationDeserializer;
+
+    /**
+     * Highest offset of each partition already read by a batch listener, so that a batch redelivered after a failed
+     * insert does not send its unparseable records to the dead letter topic again.
+     */
+    private final Map<TopicPartition, Long> scannedOffsets = new ConcurrentHashMap<>();
+
+    @Value("${notification.kafka.batch.retry-backoff-ms:1000}")
+    private long batchRetryBackoffMs;
 
     @Autowired
-    public KafkaService(NotificationService notificationService, ObjectMapper objectMapper) {
-        this.notificationService = notificationService;
-        this.objectMapper = objectMapper;
+    public KafkaService(NotificationCoalescer notificationCoalescer, NotificationMetrics notificationMetrics, DeadLetterService deadLetterService,
+                        NotificationDeserializer notificationDeserializer) {
+        this.notificationCoalescer = notificationCoalescer;
+        this.notificationMetrics = notificationMetrics;
+        this.deadLetterService = deadLetterService;
+        this.notificationDeserializer = notificationDeserializer;
     }
 
     /**
-     * Listen to the topic "notification-topic" and send the notification to the concerned user.
+     * Listen to the topic "offer-topic" and its retry topics, and send the notification to the concerned user.
+     * A record whose notification cannot be saved is retried from the retry topics with an exponential backoff,
+     * without blocking the records behind it, and ends up in the dead letter topic when the attempts are exhausted.
+     * A record that cannot be parsed goes straight to the dead letter topic.
      *
-     * @param message The message received from the topic.
+     * @param record The record received from the topic.
      */
-    @KafkaListener(topics = "offer-topic", groupId = "notification")
-    public void listenOffer(String message) {
+    @RetryableTopic(attempts = "${notification.kafka.retry.attempts:4}",
+            backoff = @Backoff(delayExpression = "${notification.kafka.retry.delay-ms:1000}",
+                    multiplierExpression = "${notification.kafka.retry.multiplier:2}",
+                    maxDelayExpression = "${notification.kafka.retry.max-delay-ms:30000}"),
+            kafkaTemplate = "deadLetterKafkaTemplate",
+            dltTopicSuffix = "${notification.kafka.dead-letter-suffix:.DLT}",
+            exclude = SerializationException.class,
+            traversingCauses = "true",
+            autoStartDltHandler = "false")
+    @KafkaListener(topics = OFFER_TOPIC, groupId = "notification", containerFactory = "notificationKafkaListenerContainerFactory",
+            autoStartup = "#{!${notification.kafka.batch.enabled:false}}")
+    public void listenOffer(ConsumerRecord<String, byte[]> record) {
+        save(record, OFFER_TOPIC);
+    }
+
+    /**
+     * Listen to the topic "experience-creation-topic" and its retry topics, and send the notification to the concerned user.
+     * Failed records are retried and dead lettered like those of "offer-topic".
+     *
+     * @param record The record received from the topic.
+     */
+    @RetryableTopic(attempts = "${notification.kafka.retry.attempts:4}",
+            backoff = @Backoff(delayExpression = "${notification.kafka.retry.delay-ms:1000}",
+                    multiplierExpression = "${notification.kafka.retry.multiplier:2}",
+                    maxDelayExpression = "${notification.kafka.retry.max-delay-ms:30000}"),
+            kafkaTemplate = "deadLetterKafkaTemplate",
+            dltTopicSuffix = "${notification.kafka.dead-letter-suffix:.DLT}",
+            exclude = SerializationException.class,
+            traversingCauses = "true",
+            autoStartDltHandler = "false")
+    @KafkaListener(topics = EXPERIENCE_TOPIC, groupId = "notification", containerFactory = "notificationKafkaListenerContainerFactory",
+            autoStartup = "#{!${notification.kafka.batch.enabled:false}}")
+    public void listenExperience(ConsumerRecord<String, byte[]> record) {
+        save(record, EXPERIENCE_TOPIC);
+    }
+
+    /**
+     * Parse a record and save its notification, waiting for the save so that a failure is retried.
+     *
+     * @param record The record, from the topic or one of its retry topics.
+     * @param topic  The original topic of the record, which gives the format of its value.
+     * @throws SerializationException If the record cannot be parsed.
+     */
+    private void save(ConsumerRecord<String, byte[]> record, String topic) {
+        if (record.topic().equals(topic)) {
+            notificationMetrics.recordConsumed(topic);
+        }
+        Notification notification;
         try {
-            NotificationDTO notification = messageToNotificationList(message);
-            notificationService.createNotification(notification);
-        } catch (JsonProcessingException e) {
-            logger.error("Error while parsing message", e);
+            notification = notificationDeserializer.deserialize(topic, record.value());
+        } catch (SerializationException e) {
+            notificationMetrics.recordParseFailure(topic);
+            throw e;
         }
+        notification.setId(sourceEventId(record));
+        notificationCoalescer.submit(notification, topic, record.timestamp()).block();
+    }
+
+    /**
+     * Listen to the topic "offer-topic" in batch mode and send the notifications to the concerned users.
+     * The offsets are committed only once the whole batch has been saved.
+     *
+     * @param records        The records received from the topic.
+     * @param acknowledgment The acknowledgment used to commit the offsets of the batch.
+     */
+    @KafkaListener(topics = OFFER_TOPIC, groupId = "notification", containerFactory = "batchKafkaListenerContainerFactory",
+            autoStartup = "${notification.kafka.batch.enabled:false}")
+    public void listenOfferBatch(List<ConsumerRecord<String, Notification>> records, Acknowledgment acknowledgment) {
+        saveBatch(records, OFFER_TOPIC, acknowledgment);
     }
 
     /**
-     * Listen to the topic "experience-creation-topic" and send the notification to the concerned user.
+     * Listen to the topic "experience-creation-topic" in batch mode and send the notifications to the concerned users.
+     * The offsets are committed only once the whole batch has been saved.
      *
-     * @param message The message received from the topic.
+     * @param records        The records received from the topic.
+     * @param acknowledgment The acknowledgment used to commit the offsets of the batch.
      */
-    @KafkaListener(topics = "experience-creation-topic", groupId = "notification")
-    public void listenExperience(String message) {
-        logger.info("listenExperience: message = " + message);
+    @KafkaListener(topics = EXPERIENCE_TOPIC, groupId = "notification", containerFactory = "batchKafkaListenerContainerFactory",
+            autoStartup = "${notification.kafka.batch.enabled:false}")
+    public void listenExperienceBatch(List<ConsumerRecord<String, Notification>> records, Acknowledgment acknowledgment) {
+        saveBatch(records, EXPERIENCE_TOPIC, acknowledgment);
+    }
+
+    /**
+     * Save a batch of notifications and commit its offsets once the bulk insert has succeeded.
+     * Records that could not be deserialized have a null value and are sent to the dead letter topic, once: when
+     * the insert fails, the whole batch is sought back and redelivered after a backoff, and the unparseable records
+     * read before are skipped.
+     *
+     * @param records        The records of the batch.
+     * @param topic          The topic of the batch.
+     * @param acknowledgment The acknowledgment of the batch.
+     */
+    private void saveBatch(List<ConsumerRecord<String, Notification>> records, String topic, Acknowledgment acknowledgment) {
+        List<Notification> notifications = new ArrayList<>(records.size());
+        long oldestTimestamp = Long.MAX_VALUE;
+        for (ConsumerRecord<String, Notification> record : records) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            boolean redelivered = record.offset() <= scannedOffsets.getOrDefault(partition, -1L);
+            scannedOffsets.merge(partition, record.offset(), Math::max);
+            if (!redelivered) {
+                notificationMetrics.recordConsumed(topic);
+            }
+            if (record.value() == null) {
+                if (!redelivered) {
+                    deadLetterService.deadLetter(record, new SerializationException("Invalid notification record on topic " + topic));
+                }
+                continue;
+            }
+            record.value().setId(sourceEventId(record));
+            notifications.add(record.value());
+            oldestTimestamp = Math.min(oldestTimestamp, record.timestamp());
+        }
         try {
-            ExperienceDTOWithUserId experienceDTOWithUserId = messageToExperience(message);
-            logger.info("listenExperience: experienceDTOWithUserId = " + experienceDTOWithUserId);
-            NotificationDTO notification = new NotificationDTO();
-            notification.setCategory(Category.EXPERIENCE);
-            notification.setDate(new Date());
-            notification.setReceiverId(experienceDTOWithUserId.getUserId());
-            notification.setMessage("You have a new experience");
-            notification.setObjectId(experienceDTOWithUserId.getId());
-            notificationService.createNotification(notification);
-        } catch (JsonProcessingException e) {
-            logger.error("Error while parsing message", e);
+            notificationCoalescer.submitAll(notifications, topic, oldestTimestamp).block();
+            acknowledgment.acknowledge();
+        } catch (RuntimeException e) {
+            logger.error("Error while saving notification batch, it will be redelivered", e);
+            acknowledgment.nack(0, Duration.ofMillis(batchRetryBackoffMs));
         }
     }
 
     /**
-     * Parse the message received from the topic.
+     * Derive the id of the notification of a record from its source event, so that a redelivered record
+     * gets the same id as its first delivery.
+     * The event id given by the producer in the "event-id" header is used if present. Otherwise the id is derived
+     * from the topic, partition and offset of the record, taken from the headers added when the record was sent
+     * to a retry or dead letter topic so that retries and replays keep the id of the original record.
      *
-     * @param message The message received from the topic.
-     * @return The notification to send to the concerned user.
-     * @throws JsonProcessingException If the message cannot be parsed.
+     * @param record The record.
+     * @return The notification id.
      */
-    private NotificationDTO messageToNotificationList(String message) throws JsonProcessingException {
-        NotificationDTO notification = objectMapper.readValue(message, new TypeReference<NotificationDTO>() {
-        });
-        logger.info("Notification received: {}", notification);
-        return notification;
+    static String sourceEventId(ConsumerRecord<?, ?> record) {
+        Header eventId = record.headers().lastHeader(EVENT_ID_HEADER);
+        if (eventId != null) {
+            return UUID.nameUUIDFromBytes(eventId.value()).toString();
+        }
+        Header originalTopic = firstHeader(record, KafkaHeaders.DLT_ORIGINAL_TOPIC);
+        Header originalPartition = firstHeader(record, KafkaHeaders.DLT_ORIGINAL_PARTITION);
+        Header originalOffset = firstHeader(record, KafkaHeaders.DLT_ORIGINAL_OFFSET);
+        String source = originalTopic != null && originalPartition != null && originalOffset != null
+                ? new String(originalTopic.value(), StandardCharsets.UTF_8) + '-' + ByteBuffer.wrap(originalPartition.value()).getInt()
+                + '@' + ByteBuffer.wrap(originalOffset.value()).getLong()
+                : record.topic() + '-' + record.partition() + '@' + record.offset();
+        return UUID.nameUUIDFromBytes(source.getBytes(StandardCharsets.UTF_8)).toString();
     }
 
     /**
-     * Parse the message received from the topic.
+     * Headers describing the original record are appended each time it is forwarded, so the first one describes
+     * the record as it was produced.
      *
-     * @param message The message received from the topic.
-     * @return The experience to send to the concerned user.
-     * @throws JsonProcessingException If the message cannot be parsed.
+     * @param record The record.
+     * @param name   The header name.
+     * @return The first header with this name, or null.
      */
-    private ExperienceDTOWithUserId messageToExperience(String message) throws JsonProcessingException {
-        ExperienceDTOWithUserId experienceDTOWithUserId = objectMapper.readValue(message, new TypeReference<ExperienceDTOWithUserId>() {
-        });
-        logger.info("experienceDTOWithUserId received: {}", experienceDTOWithUserId);
-        return experienceDTOWithUserId;
+    private static Header firstHeader(ConsumerRecord<?, ?> record, String name) {
+        Iterator<Header> headers = record.headers().headers(name).iterator();
+        return headers.hasNext() ? headers.next() : null;
     }
 }
@@ -0,0 +1,33 @@
+package fr.polytech.service;
+
+import fr.polytech.model.Broadcast;
+import fr.polytech.model.NotificationDTO;
+
+/**
+ * Broadcast bus used to deliver saved notifications through every node of the cluster.
+ * Each node receives every published notification and only sends it to the users connected to it.
+ */
+public interface NotificationBus {
+
+    /**
+     * Publish a saved notification to every node.
+     *
+     * @param notification The notification to deliver.
+     */
+    void publish(NotificationDTO notification);
+
+    /**
+     * Publish a saved broadcast to every node.
+     *
+     * @param broadcast The broadcast to deliver.
+     */
+    void publish(Broadcast broadcast);
+
+    /**
+     * Publish to every node that notifications of a receiver have been read or deleted, so that each node drops
+     * the state it holds for the receiver.
+     *
+     * @param receiverId The receiver id.
+     */
+    void publishChange(String receiverId);
+}
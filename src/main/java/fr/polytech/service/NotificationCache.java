@@ -0,0 +1,157 @@
+package fr.polytech.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fr.polytech.model.Notification;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded in-memory caches of notification lookups by id and of the first inbox page of each user.
+ * The eviction policy of each cache is a Caffeine specification, and hit and miss statistics are published
+ * as "cache.*" metrics.
+ * <p>
+ * The cached notifications are indexed by receiver so that those of one receiver can be invalidated without
+ * iterating over the whole cache. The index is updated under the lock of the cache entry, when it is written,
+ * invalidated or evicted.
+ */
+@Service
+public class NotificationCache {
+
+    private final Cache<String, Notification> notificationsById;
+
+    /**
+     * Ids of the cached notifications of each receiver.
+     */
+    private final Map<String, Set<String>> idsByReceiver = new ConcurrentHashMap<>();
+
+    /**
+     * First page of each inbox, at the maximum page size so it can serve any smaller page.
+     */
+    private final Cache<String, List<Notification>> inboxFirstPages;
+
+    @Autowired
+    public NotificationCache(MeterRegistry meterRegistry,
+                             @Value("${notification.cache.by-id.spec:maximumSize=10000,expireAfterWrite=60s}") String byIdSpec,
+                             @Value("${notification.cache.inbox.spec:maximumSize=10000,expireAfterWrite=30s}") String inboxSpec) {
+        this.notificationsById = Caffeine.from(byIdSpec)
+                .recordStats()
+                .<String, Notification>evictionListener((id, notification, cause) -> unindex(notification))
+                .build();
+        this.inboxFirstPages = Caffeine.from(inboxSpec).recordStats().build();
+        CaffeineCacheMetrics.monitor(meterRegistry, notificationsById, "notification.by-id");
+        CaffeineCacheMetrics.monitor(meterRegistry, inboxFirstPages, "notification.inbox");
+    }
+
+    /**
+     * @param id The notification id.
+     * @return The cached notification, or null.
+     */
+    public Notification getNotification(String id) {
+        return notificationsById.getIfPresent(id);
+    }
+
+    public void putNotification(Notification notification) {
+        notificationsById.asMap().compute(notification.getId(), (id, existing) -> {
+            if (existing != null) {
+                unindex(existing);
+            }
+            idsByReceiver.compute(notification.getReceiverId(), (receiverId, ids) -> {
+                Set<String> indexed = ids != null ? ids : new HashSet<>();
+                indexed.add(id);
+                return indexed;
+            });
+            return notification;
+        });
+    }
+
+    /**
+     * @param userId The receiver id.
+     * @return The cached first inbox page of the receiver, or null.
+     */
+    public List<Notification> getInboxFirstPage(String userId) {
+        return inboxFirstPages.getIfPresent(userId);
+    }
+
+    public void putInboxFirstPage(String userId, List<Notification> notifications) {
+        inboxFirstPages.put(userId, notifications);
+    }
+
+    /**
+     * Invalidate the first inbox page of a receiver, after one of its notifications has been created or changed.
+     *
+     * @param userId The receiver id.
+     */
+    public void invalidateInbox(String userId) {
+        inboxFirstPages.invalidate(userId);
+    }
+
+    /**
+     * Invalidate the first inbox page of every receiver, after a broadcast to every user.
+     */
+    public void invalidateAllInboxes() {
+        inboxFirstPages.invalidateAll();
+    }
+
+    /**
+     * Invalidate notifications and the first inbox page of their receiver.
+     *
+     * @param userId The receiver id.
+     * @param ids    The notification ids.
+     */
+    public void invalidate(String userId, Collection<String> ids) {
+        ids.forEach(this::invalidateNotification);
+        inboxFirstPages.invalidate(userId);
+    }
+
+    /**
+     * Invalidate every cached notification and the first inbox page of a receiver, after a change whose
+     * notification ids are not known.
+     *
+     * @param userId The receiver id.
+     */
+    public void invalidateReceiver(String userId) {
+        List<String> ids = new ArrayList<>();
+        idsByReceiver.computeIfPresent(userId, (receiverId, indexed) -> {
+            ids.addAll(indexed);
+            return indexed;
+        });
+        ids.forEach(this::invalidateNotification);
+        inboxFirstPages.invalidate(userId);
+    }
+
+    /**
+     * Invalidate a cached notification and remove it from the index of its receiver.
+     *
+     * @param id The notification id.
+     */
+    private void invalidateNotification(String id) {
+        notificationsById.asMap().computeIfPresent(id, (key, notification) -> {
+            unindex(notification);
+            return null;
+        });
+    }
+
+    /**
+     * Remove a notification from the index of its receiver, and the receiver itself once it has no notification.
+     *
+     * @param notification The notification.
+     */
+    private void unindex(Notification notification) {
+        idsByReceiver.computeIfPresent(notification.getReceiverId(), (receiverId, ids) -> {
+            ids.remove(notification.getId());
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+}
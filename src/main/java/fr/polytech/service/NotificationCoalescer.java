@@ -0,0 +1,312 @@
+package fr.polytech.service;
+
+import fr.polytech.model.Category;
+import fr.polytech.model.CoalescedGroup;
+import fr.polytech.model.Notification;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stage between {@link KafkaService} and {@link NotificationService} merging the notifications of one receiver
+ * and one category received within a window into a single notification with a count.
+ * <p>
+ * In coalescing mode, the first notification of a window is saved and sent at once and the following ones are
+ * merged into one notification sent at the end of the window, so a burst costs two notifications and two events.
+ * In digest mode, nothing is sent at once: every notification of the interval is merged into one periodic summary.
+ * <p>
+ * The merged notifications are added to a group stored in Mongo before their records are committed, so a crash
+ * or a redeploy does not lose a window: the group is flushed by the next node to run the flush. A group whose
+ * flush keeps failing is retried with a delay, then its notification is sent to the dead letter topic.
+ * <p>
+ * A group keeps the ids of its notifications up to a maximum, so that a redelivered one is counted once, and only
+ * counts the notifications beyond it. The groups are flushed by a single node, the holder of the flush lease.
+ */
+@Service
+public class NotificationCoalescer {
+
+    /**
+     * Initialize logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(NotificationCoalescer.class);
+
+    private static final String FLUSH_LOCK = "notification-coalesce-flush";
+
+    private final NotificationService notificationService;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final DeadLetterService deadLetterService;
+    private final MeterRegistry meterRegistry;
+    private final SchedulerLockService schedulerLockService;
+    private final Set<Category> categories = EnumSet.noneOf(Category.class);
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    @Value("${notification.coalesce.enabled:false}")
+    private boolean enabled;
+
+    @Value("${notification.coalesce.window-ms:5000}")
+    private long windowMs;
+
+    @Value("${notification.coalesce.digest.enabled:false}")
+    private boolean digestEnabled;
+
+    @Value("${notification.coalesce.digest.interval-ms:900000}")
+    private long digestIntervalMs;
+
+    @Value("${notification.coalesce.max-ids:1000}")
+    private int maxIds;
+
+    @Value("${notification.coalesce.flush-lease-ms:10000}")
+    private long flushLeaseMs;
+
+    @Value("${notification.kafka.retry.attempts:4}")
+    private int maxFlushAttempts;
+
+    @Value("${notification.kafka.retry.delay-ms:1000}")
+    private long flushRetryDelayMs;
+
+    @Autowired
+    public NotificationCoalescer(NotificationService notificationService, ReactiveMongoTemplate reactiveMongoTemplate,
+                                 DeadLetterService deadLetterService, MeterRegistry meterRegistry,
+                                 SchedulerLockService schedulerLockService,
+                                 @Value("${notification.coalesce.categories:OFFER}") List<Category> categories) {
+        this.notificationService = notificationService;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.deadLetterService = deadLetterService;
+        this.meterRegistry = meterRegistry;
+        this.schedulerLockService = schedulerLockService;
+        this.categories.addAll(categories);
+    }
+
+    /**
+     * Save and send a notification, or add it to the group of its receiver and category.
+     * The returned Mono completes once the notification is saved or stored in its group, so the record
+     * can be committed, and fails otherwise so that the record is retried.
+     *
+     * @param notification The notification, with its id set.
+     * @param topic        The topic the notification was consumed from.
+     * @param producedAt   The timestamp of the Kafka record, in milliseconds.
+     * @return The saved notification, empty if it was merged or is a duplicate.
+     */
+    public Mono<Notification> submit(Notification notification, String topic, long producedAt) {
+        if (!isCoalesced(notification)) {
+            return notificationService.createNotification(notification, topic, producedAt);
+        }
+        String key = CoalescedGroup.key(notification.getReceiverId(), notification.getCategory());
+        Mono<Boolean> leading = digestEnabled ? Mono.just(false) : openWindow(key, notification.getId(), topic);
+        return leading.flatMap(lead -> {
+            if (lead) {
+                return notificationService.createNotification(notification, topic, producedAt);
+            }
+            return addToGroup(key, notification, topic, producedAt)
+                    .doOnSuccess(ignored -> meterRegistry.counter("notification.coalesce.merged", "category",
+                            notification.getCategory().name()).increment())
+                    .then(Mono.<Notification>empty());
+        });
+    }
+
+    /**
+     * Save and send a batch of notifications, merging those of the coalesced categories.
+     *
+     * @param notifications The notifications, with their ids set.
+     * @param topic         The topic the notifications were consumed from.
+     * @param producedAt    The timestamp of the oldest Kafka record of the batch, in milliseconds.
+     * @return The saved notifications.
+     */
+    public Mono<List<Notification>> submitAll(List<Notification> notifications, String topic, long producedAt) {
+        List<Notification> notCoalesced = new ArrayList<>(notifications.size());
+        List<Mono<Notification>> coalesced = new ArrayList<>();
+        for (Notification notification : notifications) {
+            if (isCoalesced(notification)) {
+                coalesced.add(submit(notification, topic, producedAt));
+            } else {
+                notCoalesced.add(notification);
+            }
+        }
+        return notificationService.createNotifications(notCoalesced, topic, producedAt)
+                .flatMap(saved -> Mono.when(coalesced).thenReturn(saved));
+    }
+
+    private boolean isCoalesced(Notification notification) {
+        return enabled && categories.contains(notification.getCategory());
+    }
+
+    /**
+     * Open the window of a receiver and a category unless it is already open.
+     * The leader of a window is recorded in its group, so that a redelivered leader leads it again, and is dropped
+     * as a duplicate when saved, instead of being merged into its own window.
+     *
+     * @param key   The group id.
+     * @param id    The id of the notification.
+     * @param topic The topic of the notification.
+     * @return True if the notification leads the window and is sent at once.
+     */
+    private Mono<Boolean> openWindow(String key, String id, String topic) {
+        Update update = new Update()
+                .setOnInsert("topic", topic)
+                .setOnInsert("windowStart", new Date())
+                .setOnInsert("oldestTimestamp", Long.MAX_VALUE)
+                .setOnInsert("leaderId", id)
+                .setOnInsert("ids", List.of())
+                .setOnInsert("overflow", 0)
+                .setOnInsert("attempts", 0);
+        return reactiveMongoTemplate.findAndModify(byKey(key), update, FindAndModifyOptions.options().upsert(true).returnNew(true),
+                        CoalescedGroup.class)
+                .retryWhen(Retry.max(1).filter(DuplicateKeyException.class::isInstance))
+                .map(group -> id.equals(group.getLeaderId()));
+    }
+
+    /**
+     * Add a notification to its group, opening the window if it is not open. A redelivered notification is
+     * only counted once while the ids of the group are not full, then the notifications are only counted.
+     * An upsert fails with a duplicate key when the group exists but is full, or when two nodes create it at the
+     * same time, and is then retried as an update.
+     *
+     * @param key          The group id.
+     * @param notification The notification.
+     * @param topic        The topic of the notification.
+     * @param producedAt   The timestamp of its Kafka record, in milliseconds.
+     * @return Completes once the group is stored, fails if the group was removed in the meantime.
+     */
+    private Mono<Void> addToGroup(String key, Notification notification, String topic, long producedAt) {
+        Query notFull = Query.query(Criteria.where("_id").is(key).and("ids." + (maxIds - 1)).exists(false));
+        Update add = new Update()
+                .setOnInsert("topic", topic)
+                .setOnInsert("windowStart", new Date())
+                .setOnInsert("overflow", 0)
+                .setOnInsert("attempts", 0)
+                .addToSet("ids", notification.getId())
+                .set("latest", notification)
+                .min("oldestTimestamp", producedAt);
+        Update count = new Update()
+                .inc("overflow", 1)
+                .set("latest", notification)
+                .min("oldestTimestamp", producedAt);
+        return reactiveMongoTemplate.upsert(notFull, add, CoalescedGroup.class)
+                .onErrorResume(DuplicateKeyException.class, e -> reactiveMongoTemplate.updateFirst(notFull, add, CoalescedGroup.class)
+                        .flatMap(result -> result.getMatchedCount() > 0
+                                ? Mono.just(result)
+                                : reactiveMongoTemplate.updateFirst(byKey(key), count, CoalescedGroup.class)))
+                .flatMap(result -> result.getMatchedCount() > 0 || result.getUpsertedId() != null
+                        ? Mono.<Void>empty()
+                        : Mono.error(new IllegalStateException("Group " + key + " was flushed while adding a notification")));
+    }
+
+    /**
+     * Send the merged notification of the groups whose window or digest interval is over.
+     * Only the node holding the flush lease polls the groups. It keeps the lease by renewing it on each run, and
+     * another node takes over once the lease expires. A group flushed twice, by a node losing the lease during
+     * the flush, is saved once since its notification has a stable id.
+     */
+    @Scheduled(fixedDelayString = "${notification.coalesce.flush-interval-ms:500}")
+    public void flushExpiredGroups() {
+        if (!enabled || !flushing.compareAndSet(false, true)) {
+            return;
+        }
+        schedulerLockService.tryAcquire(FLUSH_LOCK, Duration.ofMillis(flushLeaseMs))
+                .filter(Boolean::booleanValue)
+                .flatMapMany(acquired -> reactiveMongoTemplate.find(Query.query(Criteria.where("windowStart")
+                        .lte(new Date(System.currentTimeMillis() - period()))), CoalescedGroup.class))
+                .concatMap(group -> flush(group).onErrorResume(throwable -> onFlushFailure(group, throwable)))
+                .doFinally(signal -> flushing.set(false))
+                .subscribe(null, throwable -> logger.error("Error while flushing the merged notifications", throwable));
+    }
+
+    /**
+     * Save and send the notification of a group, then release the group.
+     *
+     * @param group The group.
+     * @return Completes once the group is released.
+     */
+    private Mono<Void> flush(CoalescedGroup group) {
+        Notification notification = group.toNotification();
+        if (notification == null) {
+            return release(group);
+        }
+        logger.debug("Sending {} merged notification(s) to {}", group.getIds().size() + group.getOverflow(), notification.getReceiverId());
+        return notificationService.createNotification(notification, group.getTopic(), group.getOldestTimestamp())
+                .then(release(group));
+    }
+
+    /**
+     * Remove a flushed group, unless notifications were added to it during the flush: these stay in the group,
+     * whose window starts again.
+     *
+     * @param group The flushed group.
+     * @return Completes once the group is released.
+     */
+    private Mono<Void> release(CoalescedGroup group) {
+        List<String> flushedIds = group.getIds();
+        Query unchanged = Query.query(Criteria.where("_id").is(group.getId())
+                .and("ids").size(flushedIds.size())
+                .and("overflow").is(group.getOverflow()));
+        return reactiveMongoTemplate.remove(unchanged, CoalescedGroup.class)
+                .flatMap(result -> result.getDeletedCount() > 0 || flushedIds.isEmpty()
+                        ? Mono.empty()
+                        : reactiveMongoTemplate.updateFirst(byKey(group.getId()), new Update()
+                                .pullAll("ids", flushedIds.toArray())
+                                .inc("overflow", -group.getOverflow())
+                                .set("windowStart", new Date())
+                                .set("attempts", 0), CoalescedGroup.class))
+                .then();
+    }
+
+    /**
+     * Retry the flush of a group after a delay, or send its notification to the dead letter topic once the
+     * attempts are exhausted.
+     *
+     * @param group     The group whose flush failed.
+     * @param throwable The cause of the failure.
+     * @return Completes once the failure is recorded.
+     */
+    private Mono<Void> onFlushFailure(CoalescedGroup group, Throwable throwable) {
+        meterRegistry.counter("notification.coalesce.flush.failures").increment();
+        Mono<Void> recorded;
+        if (group.getAttempts() + 1 >= maxFlushAttempts) {
+            logger.error("Flush of the merged notifications of {} failed {} times, sending them to the dead letter topic",
+                    group.getId(), maxFlushAttempts, throwable);
+            Notification notification = group.toNotification();
+            recorded = (notification == null ? Mono.<Void>empty() : deadLetterService.deadLetter(notification, throwable))
+                    .then(release(group));
+        } else {
+            logger.warn("Flush of the merged notifications of {} failed, it will be retried: {}", group.getId(), throwable.getMessage());
+            Date retryAt = new Date(System.currentTimeMillis() - period() + flushRetryDelayMs * (group.getAttempts() + 1));
+            recorded = reactiveMongoTemplate.updateFirst(byKey(group.getId()),
+                    new Update().inc("attempts", 1).set("windowStart", retryAt), CoalescedGroup.class).then();
+        }
+        return recorded.onErrorResume(error -> {
+            logger.error("Error while recording the failed flush of {}", group.getId(), error);
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * @return The time a group waits before being flushed, in milliseconds.
+     */
+    private long period() {
+        return digestEnabled ? digestIntervalMs : windowMs;
+    }
+
+    private Query byKey(String key) {
+        return Query.query(Criteria.where("_id").is(key));
+    }
+}
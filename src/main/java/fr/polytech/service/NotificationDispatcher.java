@@ -0,0 +1,85 @@
+package fr.polytech.service;
+
+import fr.polytech.model.Broadcast;
+import fr.polytech.model.NotificationDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Apply a notification received from the bus to the state held by this node.
+ * Every node receives every notification, so the per-node state is updated here.
+ */
+@Service
+public class NotificationDispatcher {
+
+    /**
+     * Initialize logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    private final UnreadCounterService unreadCounterService;
+    private final NotificationCache notificationCache;
+    private final SSEService sseService;
+    private final BroadcastMaterializer broadcastMaterializer;
+
+    @Autowired
+    public NotificationDispatcher(UnreadCounterService unreadCounterService, NotificationCache notificationCache, SSEService sseService,
+                                  BroadcastMaterializer broadcastMaterializer) {
+        this.unreadCounterService = unreadCounterService;
+        this.notificationCache = notificationCache;
+        this.sseService = sseService;
+        this.broadcastMaterializer = broadcastMaterializer;
+    }
+
+    /**
+     * Update the unread counter and the cached inbox of the receiver, and send the notification to its
+     * connections on this node.
+     *
+     * @param notification The delivered notification.
+     * @param publishedAt  The time the notification was published on the bus, in milliseconds.
+     */
+    public void dispatch(NotificationDTO notification, long publishedAt) {
+        String receiverId = notification.getReceiverId().toString();
+        unreadCounterService.increment(receiverId);
+        notificationCache.invalidateInbox(receiverId);
+        sseService.sendNotificationToOneUser(notification, publishedAt);
+    }
+
+    /**
+     * Update the unread counters and the cached inboxes of the receivers of a broadcast, and send it to their
+     * connections on this node in a single pass over the connected users.
+     *
+     * @param broadcast   The delivered broadcast.
+     * @param publishedAt The time the broadcast was published on the bus, in milliseconds.
+     */
+    public void dispatchBroadcast(Broadcast broadcast, long publishedAt) {
+        broadcastMaterializer.advance(broadcast.getDate());
+        if (broadcast.getReceiverIds() == null) {
+            unreadCounterService.incrementAll();
+            notificationCache.invalidateAllInboxes();
+        } else {
+            for (String receiverId : broadcast.getReceiverIds()) {
+                unreadCounterService.increment(receiverId);
+                notificationCache.invalidateInbox(receiverId);
+            }
+        }
+        sseService.sendBroadcast(broadcast, publishedAt).whenComplete((users, throwable) -> {
+            if (throwable != null) {
+                logger.warn("Broadcast {} was not sent to every connected user: {}", broadcast.getId(), throwable.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Drop the unread counter and the cached notifications of a receiver after some of its notifications have been
+     * read or deleted, possibly through another node, so that they are reloaded on their next read.
+     *
+     * @param receiverId The receiver id.
+     */
+    public void dispatchChange(String receiverId) {
+        unreadCounterService.invalidate(receiverId);
+        notificationCache.invalidateReceiver(receiverId);
+    }
+}
@@ -0,0 +1,88 @@
+package fr.polytech.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import fr.polytech.model.NotificationDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Service;
+
+import java.io.UncheckedIOException;
+import java.util.Base64;
+
+/**
+ * Encoding of the notifications sent on the SSE stream, in JSON or in a compact CBOR form offered next to it.
+ * <p>
+ * The CBOR mapper has the configuration of the JSON mapper, except that dates are written as epoch milliseconds.
+ * On the SSE stream, whose events are text, the CBOR bytes are sent in Base64, which makes them a third larger.
+ */
+@Service
+public class NotificationEncoder {
+
+    /**
+     * Value of the "encoding" parameter of the SSE stream selecting the CBOR encoding.
+     */
+    public static final String CBOR_ENCODING = "cbor";
+
+    private final ObjectWriter jsonWriter;
+    private final ObjectMapper cborMapper;
+    private final ObjectWriter notificationWriter;
+
+    @Autowired
+    public NotificationEncoder(ObjectMapper objectMapper, Jackson2ObjectMapperBuilder jackson2ObjectMapperBuilder) {
+        this.jsonWriter = objectMapper.writerFor(NotificationDTO.class);
+        this.cborMapper = jackson2ObjectMapperBuilder
+                .factory(new CBORFactory())
+                .featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        this.notificationWriter = cborMapper.writerFor(NotificationDTO.class);
+    }
+
+    /**
+     * @return The CBOR mapper, used by the HTTP message converters.
+     */
+    public ObjectMapper getCborMapper() {
+        return cborMapper;
+    }
+
+    /**
+     * Encode a notification in JSON, as the HTTP message converters would.
+     *
+     * @param notification The notification.
+     * @return The JSON text.
+     */
+    public String toJson(NotificationDTO notification) {
+        try {
+            return jsonWriter.writeValueAsString(notification);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Encode a notification in CBOR.
+     *
+     * @param notification The notification.
+     * @return The CBOR bytes.
+     */
+    public byte[] toCbor(NotificationDTO notification) {
+        try {
+            return notificationWriter.writeValueAsBytes(notification);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Encode a notification in CBOR, then in Base64 to be sent as the data of a server sent event.
+     *
+     * @param notification The notification.
+     * @return The Base64 text of the CBOR bytes.
+     */
+    public String toBase64Cbor(NotificationDTO notification) {
+        return Base64.getEncoder().encodeToString(toCbor(notification));
+    }
+}
@@ -0,0 +1,140 @@
+package fr.polytech.service;
+
+import fr.polytech.model.Category;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Meters of the notification pipeline, from the Kafka record to the server sent event.
+ * Latencies are published as percentile histograms so that delivery lag can be alerted on.
+ * The latency timers are registered once per topic and category, so that recording does not look them up in the
+ * registry on the ingest and delivery paths.
+ */
+@Service
+public class NotificationMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Ingest latency timers of each topic.
+     */
+    private final Map<String, CategoryTimers> ingestTimers = new ConcurrentHashMap<>();
+
+    private final CategoryTimers deliveryTimers;
+
+    @Autowired
+    public NotificationMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.deliveryTimers = new CategoryTimers(category -> latencyTimer("notification.delivery.latency",
+                "Time from the saved notification to the SSE emission", category)
+                .register(meterRegistry));
+    }
+
+    /**
+     * Count a record consumed from a topic.
+     *
+     * @param topic The topic.
+     */
+    public void recordConsumed(String topic) {
+        meterRegistry.counter("notification.kafka.records", "topic", topic).increment();
+    }
+
+    /**
+     * Count a record that could not be parsed.
+     *
+     * @param topic The topic.
+     */
+    public void recordParseFailure(String topic) {
+        meterRegistry.counter("notification.kafka.parse.failures", "topic", topic).increment();
+    }
+
+    /**
+     * Record the time between the production of a Kafka record and the save of its notification.
+     *
+     * @param topic      The topic the record was consumed from.
+     * @param category   The category of the notification.
+     * @param producedAt The timestamp of the record, in milliseconds.
+     */
+    public void recordSaved(String topic, Category category, long producedAt) {
+        ingestTimers.computeIfAbsent(topic, key -> new CategoryTimers(timerCategory -> latencyTimer("notification.ingest.latency",
+                        "Time from the Kafka record to the saved notification", timerCategory)
+                        .tag("topic", key)
+                        .register(meterRegistry)))
+                .get(category)
+                .record(Duration.ofMillis(Math.max(0, System.currentTimeMillis() - producedAt)));
+    }
+
+    /**
+     * Count a redelivered notification dropped because it had already been ingested.
+     *
+     * @param topic The topic the record was consumed from.
+     */
+    public void recordDuplicate(String topic) {
+        meterRegistry.counter("notification.ingest.duplicates", "topic", topic).increment();
+    }
+
+    /**
+     * Count a notification that could not be saved.
+     *
+     * @param topic    The topic the record was consumed from.
+     * @param category The category of the notification.
+     */
+    public void recordSaveFailure(String topic, Category category) {
+        meterRegistry.counter("notification.save.failures", "topic", topic, "category", String.valueOf(category)).increment();
+    }
+
+    /**
+     * Record the time between the save of a notification and its delivery to the SSE connections of this node.
+     *
+     * @param category    The category of the notification.
+     * @param publishedAt The time the saved notification was published on the bus, in milliseconds.
+     */
+    public void recordDelivered(Category category, long publishedAt) {
+        deliveryTimers.get(category)
+                .record(Duration.ofMillis(Math.max(0, System.currentTimeMillis() - publishedAt)));
+    }
+
+    /**
+     * Count a subscription to the SSE stream.
+     *
+     * @param accepted True if the subscribe token was valid.
+     */
+    public void recordSubscription(boolean accepted) {
+        meterRegistry.counter("notification.sse.subscriptions", "result", accepted ? "accepted" : "rejected").increment();
+    }
+
+    private Timer.Builder latencyTimer(String name, String description, Category category) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("category", String.valueOf(category))
+                .publishPercentileHistogram();
+    }
+
+    /**
+     * Timers of one latency for every category, and for the notifications without a category.
+     */
+    private static class CategoryTimers {
+
+        private final Map<Category, Timer> timers = new EnumMap<>(Category.class);
+        private final Timer uncategorized;
+
+        CategoryTimers(Function<Category, Timer> timer) {
+            for (Category category : Category.values()) {
+                timers.put(category, timer.apply(category));
+            }
+            this.uncategorized = timer.apply(null);
+        }
+
+        Timer get(Category category) {
+            return category == null ? uncategorized : timers.get(category);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package fr.polytech.service;
+
+import fr.polytech.model.ArchivedNotification;
+import fr.polytech.model.Category;
+import fr.polytech.model.Notification;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Enforce the retention of the stored notifications, configured per category.
+ * <p>
+ * By default, expired notifications are removed by Mongo through one partial TTL index on the date per category.
+ * A changed retention updates the expiry of the existing index in place. When archival is enabled, the TTL
+ * indexes are dropped and a periodic pass moves the expired notifications to the archive collection in batches
+ * before deleting them. The pass runs on one node at a time, the node holding the archival lease.
+ */
+@Service
+public class NotificationRetentionService {
+
+    /**
+     * Initialize logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(NotificationRetentionService.class);
+
+    private static final String ARCHIVE_LOCK = "notification-archive";
+
+    private static final Map<Category, Duration> DEFAULT_RETENTIONS = Map.of(
+            Category.MESSAGE, Duration.ofDays(30),
+            Category.OFFER, Duration.ofDays(90),
+            Category.PAYMENT, Duration.ofDays(365),
+            Category.EXPERIENCE, Duration.ofDays(365)
+    );
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final MeterRegistry meterRegistry;
+    private final SchedulerLockService schedulerLockService;
+    private final Map<Category, Duration> retentions = new EnumMap<>(Category.class);
+    private final AtomicBoolean archiving = new AtomicBoolean();
+
+    @Value("${notification.retention.archive.enabled:false}")
+    private boolean archiveEnabled;
+
+    @Value("${notification.retention.archive.batch-size:1000}")
+    private int archiveBatchSize;
+
+    @Value("${notification.retention.archive.interval-ms:3600000}")
+    private long archiveIntervalMs;
+
+    @Autowired
+    public NotificationRetentionService(ReactiveMongoTemplate reactiveMongoTemplate, MeterRegistry meterRegistry,
+                                        SchedulerLockService schedulerLockService, Environment environment) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.meterRegistry = meterRegistry;
+        this.schedulerLockService = schedulerLockService;
+        for (Category category : Category.values()) {
+            retentions.put(category, environment.getProperty("notification.retention." + category.name().toLowerCase(),
+                    Duration.class, DEFAULT_RETENTIONS.get(category)));
+        }
+    }
+
+    /**
+     * Create the TTL index of each category, or drop them if expired notifications are archived instead.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void configureExpiry() {
+        Flux.fromIterable(retentions.entrySet())
+                .flatMap(retention -> archiveEnabled
+                        ? dropExpiryIndex(retention.getKey())
+                        : createExpiryIndex(retention.getKey(), retention.getValue()))
+                .subscribe(null, throwable -> logger.error("Error while configuring the notification expiry", throwable));
+    }
+
+    /**
+     * Create the TTL index removing the notifications of a category older than its retention.
+     * An existing index with another expiry is updated with "collMod", since creating it again with other options
+     * would fail.
+     *
+     * @param category  The category.
+     * @param retention The retention of the category.
+     * @return Nothing.
+     */
+    private Mono<Void> createExpiryIndex(Category category, Duration retention) {
+        String indexName = expiryIndexName(category);
+        return reactiveMongoTemplate.indexOps(Notification.class)
+                .getIndexInfo()
+                .filter(index -> index.getName().equals(indexName))
+                .next()
+                .flatMap(index -> index.getExpireAfter().filter(retention::equals).isPresent()
+                        ? Mono.<Void>empty()
+                        : updateExpiry(index, retention))
+                .switchIfEmpty(Mono.defer(() -> reactiveMongoTemplate.indexOps(Notification.class)
+                        .ensureIndex(new Index().on("date", Sort.Direction.ASC)
+                                .named(indexName)
+                                .expire(retention)
+                                .partial(PartialIndexFilter.of(Criteria.where("category").is(category.name()))))
+                        .then()))
+                .doOnSuccess(ignored -> logger.info("Notifications of category {} expire after {}", category, retention));
+    }
+
+    /**
+     * Change the expiry of an existing TTL index.
+     *
+     * @param index     The index.
+     * @param retention The new retention.
+     * @return Nothing.
+     */
+    private Mono<Void> updateExpiry(IndexInfo index, Duration retention) {
+        Document command = new Document("collMod", reactiveMongoTemplate.getCollectionName(Notification.class))
+                .append("index", new Document("name", index.getName()).append("expireAfterSeconds", retention.toSeconds()));
+        return reactiveMongoTemplate.executeCommand(command)
+                .doOnSuccess(result -> logger.info("Updated the expiry of index {} from {} to {}", index.getName(),
+                        index.getExpireAfter().orElse(null), retention))
+                .then();
+    }
+
+    /**
+     * Drop the TTL index of a category if it exists.
+     *
+     * @param category The category.
+     * @return Nothing.
+     */
+    private Mono<Void> dropExpiryIndex(Category category) {
+        return reactiveMongoTemplate.indexOps(Notification.class)
+                .getIndexInfo()
+                .filter(index -> index.getName().equals(expiryIndexName(category)))
+                .flatMap(index -> reactiveMongoTemplate.indexOps(Notification.class).dropIndex(index.getName()))
+                .then();
+    }
+
+    private String expiryIndexName(Category category) {
+        return "date_ttl_" + category.name().toLowerCase();
+    }
+
+    /**
+     * Move the expired notifications of every category to the archive collection.
+     * Does nothing unless archival is enabled, or while another node or the previous pass is archiving.
+     */
+    @Scheduled(fixedDelayString = "${notification.retention.archive.interval-ms:3600000}")
+    public void archiveExpiredNotifications() {
+        if (!archiveEnabled || !archiving.compareAndSet(false, true)) {
+            return;
+        }
+        schedulerLockService.tryAcquire(ARCHIVE_LOCK, Duration.ofMillis(archiveIntervalMs))
+                .filter(Boolean::booleanValue)
+                .flatMap(acquired -> Flux.fromIterable(retentions.entrySet())
+                        .concatMap(retention -> archiveCategory(retention.getKey(), retention.getValue()))
+                        .then(schedulerLockService.release(ARCHIVE_LOCK)))
+                .doFinally(signal -> archiving.set(false))
+                .subscribe(null, throwable -> logger.error("Error while archiving the expired notifications", throwable));
+    }
+
+    /**
+     * Move the expired notifications of a category to the archive collection, one batch after the other.
+     * A failure is logged and does not stop the archival of the other categories.
+     *
+     * @param category  The category.
+     * @param retention The retention of the category.
+     * @return Nothing.
+     */
+    private Mono<Void> archiveCategory(Category category, Duration retention) {
+        Date expiredBefore = new Date(System.currentTimeMillis() - retention.toMillis());
+        return archiveBatch(category, expiredBefore)
+                .expand(count -> count == archiveBatchSize ? archiveBatch(category, expiredBefore) : Mono.empty())
+                .reduce(0L, Long::sum)
+                .doOnNext(archived -> {
+                    logger.info("Archived {} expired notifications of category {}", archived, category);
+                    meterRegistry.counter("notification.retention.archived", "category", category.name()).increment(archived);
+                })
+                .onErrorResume(throwable -> {
+                    logger.error("Error while archiving the notifications of category {}", category, throwable);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * Move one batch of expired notifications of a category to the archive collection.
+     * Archived documents are upserted by id, so a batch interrupted between the copy and the delete can safely
+     * be archived again by the next pass.
+     *
+     * @param category      The category.
+     * @param expiredBefore The date before which notifications are expired.
+     * @return The number of notifications archived.
+     */
+    private Mono<Long> archiveBatch(Category category, Date expiredBefore) {
+        Query expired = Query.query(Criteria.where("category").is(category.name()).and("date").lt(expiredBefore))
+                .limit(archiveBatchSize);
+        Date archivedAt = new Date();
+
+        return reactiveMongoTemplate.find(expired, Notification.class)
+                .collectList()
+                .flatMap(notifications -> {
+                    if (notifications.isEmpty()) {
+                        return Mono.just(0L);
+                    }
+                    ReactiveBulkOperations archive = reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ArchivedNotification.class);
+                    notifications.forEach(notification -> archive.replaceOne(
+                            Query.query(Criteria.where("_id").is(notification.getId())),
+                            new ArchivedNotification(notification, archivedAt),
+                            FindAndReplaceOptions.options().upsert()));
+                    List<String> ids = notifications.stream().map(Notification::getId).toList();
+                    return archive.execute()
+                            .then(reactiveMongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), Notification.class))
+                            .map(deleteResult -> deleteResult.getDeletedCount());
+                });
+    }
+}
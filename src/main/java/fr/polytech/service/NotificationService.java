@@ -1,20 +1,34 @@
 package fr.polytech.service;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.interfaces.DecodedJWT;
+import com.mongodb.client.result.DeleteResult;
+import fr.polytech.model.Category;
+import fr.polytech.model.InboxCursor;
 import fr.polytech.model.Notification;
 import fr.polytech.model.NotificationDTO;
 import fr.polytech.repository.NotificationRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Predicate;
 
 @Service
 public class NotificationService {
@@ -25,35 +39,138 @@ public class NotificationService {
     private static final Logger logger = LoggerFactory.getLogger(NotificationService.class);
 
     private final NotificationRepository notificationRepository;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final NotificationBus notificationBus;
+    private final UnreadCounterService unreadCounterService;
+    private final NotificationCache notificationCache;
+    private final NotificationMetrics notificationMetrics;
+    private final RecentNotificationFilter recentNotificationFilter;
+    private final DecodedTokenCache decodedTokenCache;
     private final SSEService sseService;
+    private final BroadcastMaterializer broadcastMaterializer;
+
+    @Value("${notification.inbox.default-limit:20}")
+    private int defaultInboxLimit;
+
+    @Value("${notification.inbox.max-limit:100}")
+    private int maxInboxLimit;
+
+    @Value("${notification.export.batch-size:500}")
+    private int exportBatchSize;
 
     @Autowired
-    public NotificationService(NotificationRepository notificationRepository, SSEService sseService) {
+    public NotificationService(NotificationRepository notificationRepository, ReactiveMongoTemplate reactiveMongoTemplate, NotificationBus notificationBus,
+                               UnreadCounterService unreadCounterService, NotificationCache notificationCache,
+                               NotificationMetrics notificationMetrics, RecentNotificationFilter recentNotificationFilter,
+                               DecodedTokenCache decodedTokenCache, SSEService sseService, BroadcastMaterializer broadcastMaterializer) {
         this.notificationRepository = notificationRepository;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.notificationBus = notificationBus;
+        this.unreadCounterService = unreadCounterService;
+        this.notificationCache = notificationCache;
+        this.notificationMetrics = notificationMetrics;
+        this.recentNotificationFilter = recentNotificationFilter;
+        this.decodedTokenCache = decodedTokenCache;
         this.sseService = sseService;
+        this.broadcastMaterializer = broadcastMaterializer;
     }
 
     /**
      * Save and send the notifications to the concerned user.
+     * The notification is only sent once it has been saved, and a failed save is signaled to the caller
+     * so that the record can be retried.
+     * <p>
+     * The id of the notification identifies its source event, so a redelivered event is dropped, either by the
+     * recent id filter or by the upsert, and is neither stored nor sent twice.
+     *
+     * @param notification The notification to send, with its id set.
+     * @param topic        The topic the notification was consumed from.
+     * @param producedAt   The timestamp of the Kafka record, in milliseconds.
+     * @return The saved notification, empty if it is a duplicate.
+     */
+    public Mono<Notification> createNotification(Notification notification, String topic, long producedAt) {
+        logger.debug("Creating notification");
+
+        if (notification.getId() == null) {
+            return Mono.error(missingId());
+        }
+        if (!recentNotificationFilter.markIfNew(notification.getId())) {
+            notificationMetrics.recordDuplicate(topic);
+            return Mono.empty();
+        }
+
+        return notificationRepository.insertIfAbsent(notification)
+                .flatMap(inserted -> {
+                    if (!inserted) {
+                        notificationMetrics.recordDuplicate(topic);
+                        return Mono.empty();
+                    }
+                    logger.debug("Notification created");
+                    notificationMetrics.recordSaved(topic, notification.getCategory(), producedAt);
+                    notificationBus.publish(new NotificationDTO(notification));
+                    return Mono.just(notification);
+                })
+                .doOnError(throwable -> {
+                    logger.error("Error while creating notification", throwable);
+                    recentNotificationFilter.forget(notification.getId());
+                    notificationMetrics.recordSaveFailure(topic, notification.getCategory());
+                });
+    }
+
+    /**
+     * Save a batch of notifications with a single unordered bulk upsert, then send them to the concerned users.
+     * The notifications are only sent once the whole batch has been written, and duplicates are dropped
+     * as in {@link #createNotification(Notification, String, long)}.
      *
-     * @param notification The notification to send.
+     * @param notifications The notifications to send, with their ids set.
+     * @param topic         The topic the notifications were consumed from.
+     * @param producedAt    The timestamp of the oldest Kafka record of the batch, in milliseconds.
+     * @return The saved notifications.
      */
-    public void createNotification(NotificationDTO notification) {
-        logger.info("Creating notification");
+    public Mono<List<Notification>> createNotifications(List<Notification> notifications, String topic, long producedAt) {
+        List<Notification> notificationsToSave = new ArrayList<>(notifications.size());
+        for (Notification notification : notifications) {
+            if (notification.getId() == null) {
+                return Mono.error(missingId());
+            }
+        }
+        for (Notification notification : notifications) {
+            if (recentNotificationFilter.markIfNew(notification.getId())) {
+                notificationsToSave.add(notification);
+            } else {
+                notificationMetrics.recordDuplicate(topic);
+            }
+        }
+        if (notificationsToSave.isEmpty()) {
+            return Mono.just(List.of());
+        }
+        logger.info("Creating {} notifications", notificationsToSave.size());
 
-        Notification notificationToSave = new Notification();
-        notificationToSave.setId(UUID.randomUUID().toString());
-        notificationToSave.setReceiverId(notification.getReceiverId().toString());
-        notificationToSave.setObjectId(notification.getObjectId().toString());
-        notificationToSave.setDate(notification.getDate());
-        notificationToSave.setMessage(notification.getMessage());
-        notificationToSave.setCategory(notification.getCategory());
+        return notificationRepository.insertAllIfAbsent(notificationsToSave)
+                .doOnSuccess(inserted -> {
+                    logger.info("{} notifications created", inserted.size());
+                    for (int duplicate = inserted.size(); duplicate < notificationsToSave.size(); duplicate++) {
+                        notificationMetrics.recordDuplicate(topic);
+                    }
+                    inserted.forEach(notificationToSend -> {
+                        notificationMetrics.recordSaved(topic, notificationToSend.getCategory(), producedAt);
+                        notificationBus.publish(new NotificationDTO(notificationToSend));
+                    });
+                })
+                .doOnError(throwable -> notificationsToSave.forEach(notificationToSave -> {
+                    recentNotificationFilter.forget(notificationToSave.getId());
+                    notificationMetrics.recordSaveFailure(topic, notificationToSave.getCategory());
+                }));
+    }
 
-        Mono<Notification> notificationMono = notificationRepository.save(notificationToSave);
-        notificationMono.subscribe(notificationToSend -> {
-            logger.info("Notification created");
-            sseService.sendNotificationToOneUser(notificationToSend);
-        }, throwable -> logger.error("Error while creating notification", throwable));
+    /**
+     * Ids are derived from the source event of the notification, so that a redelivered notification, or one of
+     * a redelivered batch, gets the same id and is deduplicated. A random id would defeat the deduplication.
+     *
+     * @return The error signaled for a notification without id.
+     */
+    private IllegalArgumentException missingId() {
+        return new IllegalArgumentException("A notification must have an id derived from its source event");
     }
 
     /**
@@ -66,6 +183,50 @@ public class NotificationService {
         return notificationRepository.findAll();
     }
 
+    /**
+     * Export notifications matching optional filters, ordered by id.
+     * The notifications are read with a cursor fetching a bounded batch at a time and written as they arrive,
+     * so an export runs in constant memory whatever the size of the collection. An interrupted export is
+     * resumed by passing the id of the last exported notification as "afterId".
+     *
+     * @param category   Only export the notifications of this category, may be null
+     * @param receiverId Only export the notifications of this receiver, may be null
+     * @param after      Inclusive lower bound on the notification date, may be null
+     * @param before     Exclusive upper bound on the notification date, may be null
+     * @param afterId    Only export the notifications whose id follows this one, null to start from the beginning
+     * @param limit      Maximum number of notifications to export, null for no limit
+     * @return The exported notifications
+     */
+    public Flux<Notification> exportNotifications(Category category, String receiverId, Date after, Date before, String afterId, Integer limit) {
+        logger.info("Exporting notifications (category {}, receiver {}, after {}, before {}, after id {})", category, receiverId, after, before, afterId);
+        Criteria criteria = new Criteria();
+        if (category != null) {
+            criteria = criteria.and("category").is(category);
+        }
+        if (receiverId != null) {
+            criteria = criteria.and("receiverId").is(receiverId);
+        }
+        if (after != null || before != null) {
+            Criteria date = criteria.and("date");
+            if (after != null) {
+                date.gte(after);
+            }
+            if (before != null) {
+                date.lt(before);
+            }
+        }
+        if (afterId != null) {
+            criteria = criteria.and("_id").gt(afterId);
+        }
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "_id"))
+                .cursorBatchSize(exportBatchSize);
+        if (limit != null) {
+            query.limit(Math.max(1, limit));
+        }
+        return reactiveMongoTemplate.find(query, Notification.class);
+    }
+
     /**
      * Get notification by id.
      *
@@ -75,27 +236,80 @@ public class NotificationService {
      */
     public Mono<Notification> getNotificationById(String id) {
         logger.info("Getting notification by id: " + id);
+        Notification cached = notificationCache.getNotification(id);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
         return notificationRepository.findById(id)
+                .doOnNext(notificationCache::putNotification)
                 .switchIfEmpty(Mono.error(new WebClientResponseException(HttpStatus.NOT_FOUND.value(),
                         HttpStatus.NOT_FOUND.getReasonPhrase(), null, null, null)));
     }
 
 
     /**
-     * Get all notifications by receiver id
+     * Get a page of notifications by receiver id, newest first.
+     * The page is read with a keyset on the notification date and id so its cost only depends on the page size.
+     * The first page is served from the inbox cache. The broadcasts sent to the receiver since its last read
+     * are written in its inbox first.
      *
      * @param userId Receiver id
+     * @param limit  Maximum number of notifications to return, defaults to the configured page size
+     * @param cursor Cursor of the last notification of the previous page, null for the first page
      * @return List of notifications
+     * @throws WebClientResponseException If the cursor is malformed.
      */
-    public Flux<Notification> getAllNotificationsByReceiverId(String userId) {
-        logger.info("Getting all notifications by receiver id");
-        return notificationRepository
-                .findAll()
-                .filter(notification -> notification.getReceiverId().equals(userId));
+    public Flux<Notification> getAllNotificationsByReceiverId(String userId, Integer limit, String cursor) {
+        logger.info("Getting notifications by receiver id");
+        int pageSize = resolveInboxLimit(limit);
+        if (cursor == null) {
+            return broadcastMaterializer.materialize(userId)
+                    .then(Mono.defer(() -> getInboxFirstPage(userId)))
+                    .flatMapIterable(notifications -> notifications.subList(0, Math.min(pageSize, notifications.size())));
+        }
+        InboxCursor after;
+        try {
+            after = InboxCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return Flux.error(new WebClientResponseException(HttpStatus.BAD_REQUEST.value(),
+                    HttpStatus.BAD_REQUEST.getReasonPhrase(), null, null, null));
+        }
+        return broadcastMaterializer.materialize(userId)
+                .thenMany(notificationRepository.findByReceiverIdBefore(userId, after.date(), after.id(), PageRequest.of(0, pageSize)));
     }
 
     /**
-     * Delete notification by id
+     * Get the first inbox page of a receiver at the maximum page size, from the cache or from the database.
+     *
+     * @param userId Receiver id
+     * @return The most recent notifications of the receiver, newest first
+     */
+    private Mono<List<Notification>> getInboxFirstPage(String userId) {
+        List<Notification> cached = notificationCache.getInboxFirstPage(userId);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return notificationRepository.findByReceiverIdOrderByDateDescIdDesc(userId, PageRequest.of(0, maxInboxLimit))
+                .collectList()
+                .map(List::copyOf)
+                .doOnNext(notifications -> notificationCache.putInboxFirstPage(userId, notifications));
+    }
+
+    /**
+     * Clamp the requested page size between 1 and the configured maximum.
+     *
+     * @param limit The requested page size, may be null.
+     * @return The page size to use.
+     */
+    private int resolveInboxLimit(Integer limit) {
+        if (limit == null) {
+            return defaultInboxLimit;
+        }
+        return Math.max(1, Math.min(limit, maxInboxLimit));
+    }
+
+    /**
+     * Delete notification by id, then drop it from the caches and the replay buffer like the bulk deletes
      *
      * @param id    Notification id
      * @param token Token
@@ -110,17 +324,156 @@ public class NotificationService {
         }
 
         String pureToken = token.split(" ")[1];
-        DecodedJWT decodedJWT = JWT.decode(pureToken);
+        String subject = decodedTokenCache.subject(pureToken);
 
-        return getNotificationById(id)
+        return broadcastMaterializer.materialize(subject)
+                .then(Mono.defer(() -> getNotificationById(id)))
                 .flatMap(notification -> {
-                    if (!notification.getReceiverId().equals(decodedJWT.getSubject())) {
+                    if (!notification.getReceiverId().equals(subject)) {
                         return Mono.error(new WebClientResponseException(HttpStatus.FORBIDDEN.value(),
                                 HttpStatus.FORBIDDEN.getReasonPhrase(), null, null, null));
                     }
-                    return notificationRepository.deleteById(id);
+                    return notificationRepository.deleteById(id)
+                            .doOnSuccess(aVoid -> {
+                                notificationCache.invalidate(notification.getReceiverId(), List.of(id));
+                                if (!notification.isRead()) {
+                                    unreadCounterService.decrement(notification.getReceiverId(), 1);
+                                }
+                                sseService.removeFromReplay(UUID.fromString(notification.getReceiverId()),
+                                        deleted -> id.equals(deleted.getId()));
+                                notificationBus.publishChange(notification.getReceiverId());
+                            });
+                });
+    }
+
+    /**
+     * Delete notifications of a receiver by id, with a single delete.
+     *
+     * @param userId Receiver id
+     * @param ids    Notification ids, ids of other receivers are ignored
+     * @return The number of deleted notifications
+     */
+    public Mono<Long> deleteNotifications(String userId, List<String> ids) {
+        logger.info("Removing {} notifications of receiver {}", ids.size(), userId);
+        Set<String> deletedIds = new HashSet<>(ids);
+        return deleteNotifications(userId, Criteria.where("_id").in(deletedIds),
+                notification -> deletedIds.contains(notification.getId()));
+    }
+
+    /**
+     * Delete the notifications of a receiver matching optional filters, with a single delete.
+     * Without any filter, every notification of the receiver is deleted.
+     *
+     * @param userId   Receiver id
+     * @param category Only delete the notifications of this category, null for every category
+     * @param after    Inclusive lower bound on the notification date, may be null
+     * @param before   Exclusive upper bound on the notification date, may be null
+     * @return The number of deleted notifications
+     */
+    public Mono<Long> deleteNotifications(String userId, Category category, Date after, Date before) {
+        logger.info("Removing notifications of receiver {} (category {}, after {}, before {})", userId, category, after, before);
+        Criteria criteria = new Criteria();
+        if (category != null) {
+            criteria = criteria.and("category").is(category);
+        }
+        if (after != null || before != null) {
+            Criteria date = criteria.and("date");
+            if (after != null) {
+                date.gte(after);
+            }
+            if (before != null) {
+                date.lt(before);
+            }
+        }
+        return deleteNotifications(userId, criteria, notification -> (category == null || category == notification.getCategory())
+                && (after == null || notification.getDate() != null && !notification.getDate().before(after))
+                && (before == null || notification.getDate() != null && notification.getDate().before(before)));
+    }
+
+    /**
+     * Delete the notifications of a receiver matching a criteria with a single delete, then drop them from the
+     * caches and the replay buffer, and tell the other nodes to drop their state of the receiver. The unread
+     * counter of the receiver is reloaded on its next read, since the delete does not tell how many of the deleted
+     * notifications were unread.
+     *
+     * @param userId   Receiver id
+     * @param criteria Criteria selecting the notifications
+     * @param deleted  Predicate matching the same notifications, for the replay buffer
+     * @return The number of deleted notifications
+     */
+    private Mono<Long> deleteNotifications(String userId, Criteria criteria, Predicate<NotificationDTO> deleted) {
+        Query query = Query.query(criteria.and("receiverId").is(userId));
+        return broadcastMaterializer.materialize(userId)
+                .then(reactiveMongoTemplate.remove(query, Notification.class))
+                .map(DeleteResult::getDeletedCount)
+                .doOnNext(count -> {
+                    if (count > 0) {
+                        notificationCache.invalidateReceiver(userId);
+                        unreadCounterService.invalidate(userId);
+                        sseService.removeFromReplay(UUID.fromString(userId), deleted);
+                        notificationBus.publishChange(userId);
+                    }
+                });
+    }
+
+    /**
+     * Mark notifications of a receiver as read.
+     *
+     * @param userId Receiver id
+     * @param ids    Notification ids, ids of other receivers are ignored
+     * @return The number of notifications marked as read
+     */
+    public Mono<Long> markAsRead(String userId, List<String> ids) {
+        logger.info("Marking {} notifications of receiver {} as read", ids.size(), userId);
+        return markAsRead(userId, Criteria.where("_id").in(ids))
+                .doOnNext(count -> notificationCache.invalidate(userId, ids));
+    }
+
+    /**
+     * Mark all notifications of a receiver older than a date as read.
+     *
+     * @param userId Receiver id
+     * @param before Exclusive upper bound on the notification date
+     * @return The number of notifications marked as read
+     */
+    public Mono<Long> markAllAsRead(String userId, Date before) {
+        logger.info("Marking notifications of receiver {} before {} as read", userId, before);
+        return markAsRead(userId, Criteria.where("date").lt(before))
+                .doOnNext(count -> notificationCache.invalidateReceiver(userId));
+    }
+
+    /**
+     * Mark the unread notifications of a receiver matching a criteria as read, with a single update.
+     * The other nodes are told to drop their unread counter and cached notifications of the receiver.
+     *
+     * @param userId   Receiver id
+     * @param criteria Criteria selecting the notifications
+     * @return The number of notifications marked as read
+     */
+    private Mono<Long> markAsRead(String userId, Criteria criteria) {
+        Query query = Query.query(criteria.and("receiverId").is(userId).and("read").ne(true));
+        Update update = new Update().set("read", true).set("readAt", new Date());
+        return broadcastMaterializer.materialize(userId)
+                .then(reactiveMongoTemplate.updateMulti(query, update, Notification.class))
+                .map(updateResult -> updateResult.getModifiedCount())
+                .doOnNext(count -> {
+                    unreadCounterService.decrement(userId, count);
+                    if (count > 0) {
+                        notificationBus.publishChange(userId);
+                    }
                 });
     }
 
+    /**
+     * Get the number of unread notifications of a receiver.
+     *
+     * @param userId Receiver id
+     * @return The number of unread notifications
+     */
+    public Mono<Long> getUnreadCount(String userId) {
+        return broadcastMaterializer.materialize(userId)
+                .then(Mono.defer(() -> unreadCounterService.getUnreadCount(userId)));
+    }
+
 
 }
@@ -0,0 +1,42 @@
+package fr.polytech.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Bounded set of the ids of the notifications recently ingested by this node.
+ * A record redelivered by Kafka after a rebalance gets the same id as the first delivery, so it is dropped here
+ * before reaching Mongo. Ids that fell out of the set are still deduplicated by the upsert on the id.
+ */
+@Service
+public class RecentNotificationFilter {
+
+    private final Cache<String, Boolean> recentIds;
+
+    @Autowired
+    public RecentNotificationFilter(@Value("${notification.ingest.recent-ids.max-size:100000}") long maxSize) {
+        this.recentIds = Caffeine.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /**
+     * Record an id, unless it has already been recorded.
+     *
+     * @param id The notification id.
+     * @return True if the id had not been seen recently, false if the notification is a duplicate.
+     */
+    public boolean markIfNew(String id) {
+        return recentIds.asMap().putIfAbsent(id, Boolean.TRUE) == null;
+    }
+
+    /**
+     * Forget an id whose notification could not be saved, so that its retry is not dropped.
+     *
+     * @param id The notification id.
+     */
+    public void forget(String id) {
+        recentIds.invalidate(id);
+    }
+}
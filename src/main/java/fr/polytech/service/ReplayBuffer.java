@@ -0,0 +1,77 @@
+package fr.polytech.service;
+
+import fr.polytech.model.NotificationDTO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Bounded ring buffer of the last notifications sent to a user, used to resume a stream after a reconnection.
+ */
+class ReplayBuffer {
+
+    private final SSEFrame[] notifications;
+
+    /**
+     * Total number of notifications added, the next one is written at {@code count % capacity}.
+     */
+    private long count;
+
+    ReplayBuffer(int capacity) {
+        this.notifications = new SSEFrame[capacity];
+    }
+
+    /**
+     * Add a notification, overwriting the oldest one if the buffer is full.
+     *
+     * @param notification The frame of the notification.
+     */
+    synchronized void add(SSEFrame notification) {
+        notifications[(int) (count % notifications.length)] = notification;
+        count++;
+    }
+
+    /**
+     * Get the notifications added after the notification with the given id, oldest first.
+     *
+     * @param lastEventId The id of the last notification received by the client.
+     * @return The frames of the notifications added after it, or null if it is not in the buffer anymore.
+     */
+    synchronized List<SSEFrame> after(String lastEventId) {
+        long oldest = Math.max(0, count - notifications.length);
+        for (long index = count - 1; index >= oldest; index--) {
+            if (notifications[(int) (index % notifications.length)].getNotification().getId().equals(lastEventId)) {
+                List<SSEFrame> missed = new ArrayList<>((int) (count - index - 1));
+                for (long next = index + 1; next < count; next++) {
+                    missed.add(notifications[(int) (next % notifications.length)]);
+                }
+                return missed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove the notifications matching a predicate, keeping the order of the others.
+     *
+     * @param predicate The predicate of the notifications to remove.
+     */
+    synchronized void removeIf(Predicate<NotificationDTO> predicate) {
+        long oldest = Math.max(0, count - notifications.length);
+        List<SSEFrame> kept = new ArrayList<>((int) (count - oldest));
+        for (long index = oldest; index < count; index++) {
+            SSEFrame notification = notifications[(int) (index % notifications.length)];
+            if (!predicate.test(notification.getNotification())) {
+                kept.add(notification);
+            }
+        }
+        if (kept.size() == count - oldest) {
+            return;
+        }
+        Arrays.fill(notifications, null);
+        count = 0;
+        kept.forEach(this::add);
+    }
+}
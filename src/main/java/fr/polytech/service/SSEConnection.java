@@ -0,0 +1,70 @@
+package fr.polytech.service;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One open SSE stream of a user: its bounded sink, the last time the client consumed an event and a signal
+ * used to close the stream from the server side.
+ */
+class SSEConnection {
+
+    private final Sinks.Many<SSEFrame> sink;
+
+    private final Sinks.Empty<Void> closed = Sinks.empty();
+
+    private volatile long lastActivity = System.currentTimeMillis();
+
+    /**
+     * Number of notifications emitted to the stream and not yet taken from its buffer by the client.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    SSEConnection(int bufferSize) {
+        this.sink = Sinks.many().unicast().onBackpressureBuffer(Queues.<SSEFrame>get(bufferSize).get());
+    }
+
+    Sinks.Many<SSEFrame> getSink() {
+        return sink;
+    }
+
+    long getLastActivity() {
+        return lastActivity;
+    }
+
+    int getPending() {
+        return pending.get();
+    }
+
+    void addPending() {
+        pending.incrementAndGet();
+    }
+
+    void removePending() {
+        pending.decrementAndGet();
+    }
+
+    /**
+     * Record that the client has consumed an event.
+     */
+    void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Close the stream from the server side.
+     */
+    void close() {
+        closed.tryEmitEmpty();
+    }
+
+    /**
+     * @return A mono completing when the stream is closed from the server side.
+     */
+    Mono<Void> onClose() {
+        return closed.asMono();
+    }
+}
@@ -0,0 +1,56 @@
+package fr.polytech.service;
+
+import fr.polytech.model.NotificationDTO;
+
+import java.util.function.Function;
+
+/**
+ * A notification on its way to the SSE connections of its receiver, with the data of its server sent event.
+ * <p>
+ * The frame is built once per notification, before its delivery is queued, and the same instance goes through the
+ * connections and the replay buffer of the receiver, so the notification is encoded once per encoding instead of
+ * once per connection. Two connections encoding it at the same time both produce the same data, so the race is
+ * harmless.
+ */
+final class SSEFrame {
+
+    private final NotificationDTO notification;
+    private final Function<NotificationDTO, String> jsonEncoder;
+    private final Function<NotificationDTO, String> cborEncoder;
+
+    private volatile String json;
+    private volatile String cbor;
+
+    SSEFrame(NotificationDTO notification, Function<NotificationDTO, String> jsonEncoder, Function<NotificationDTO, String> cborEncoder) {
+        this.notification = notification;
+        this.jsonEncoder = jsonEncoder;
+        this.cborEncoder = cborEncoder;
+    }
+
+    NotificationDTO getNotification() {
+        return notification;
+    }
+
+    /**
+     * Get the data of the server sent event, encoded on first use.
+     *
+     * @param cbor True for the Base64 CBOR data, false for the JSON data.
+     * @return The encoded data.
+     */
+    String getData(boolean cbor) {
+        if (cbor) {
+            String data = this.cbor;
+            if (data == null) {
+                data = cborEncoder.apply(notification);
+                this.cbor = data;
+            }
+            return data;
+        }
+        String data = this.json;
+        if (data == null) {
+            data = jsonEncoder.apply(notification);
+            this.json = data;
+        }
+        return data;
+    }
+}
@@ -1,17 +1,56 @@
 package fr.polytech.service;
 
+import fr.polytech.model.Broadcast;
 import fr.polytech.model.Notification;
 import fr.polytech.model.NotificationDTO;
+import fr.polytech.model.OverflowPolicy;
+import fr.polytech.repository.NotificationRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
+/**
+ * Registry of the SSE connections of this node and delivery of the notifications to them.
+ * <p>
+ * The registry is split into shards by user id. Each shard delivers the notifications of its users on its own
+ * thread, from a bounded queue, so the thread that saved or received a notification only enqueues it and fan-out
+ * runs on every shard in parallel. The notifications of a user are delivered in order by its shard. When the
+ * queue of a shard is full, the caller waits for a bounded time, which slows down the producers, then the
+ * notification is dropped from the live stream and counted. It is still in the inbox of the user.
+ * <p>
+ * A notification is encoded once per encoding: its {@link SSEFrame} is built before its delivery is queued and
+ * shared by every connection of its receiver and by the replay buffer. The notification of each receiver of a
+ * broadcast has its own frame, since its id and receiver id differ.
+ */
 @Service
 public class SSEService {
 
@@ -19,32 +58,278 @@ public class SSEService {
      * Initialize logger
      */
     private static final Logger logger = LoggerFactory.getLogger(SSEService.class);
-    private final Map<UUID, Sinks.Many<NotificationDTO>> userSinks = new ConcurrentHashMap<>();
 
     /**
-     * Register a user to the SSE service.
+     * Number of times an emission is retried when another thread is emitting to the same sink.
+     */
+    private static final int MAX_EMIT_ATTEMPTS = 8;
+
+    private final SSEShard[] shards;
+
+    private final NotificationRepository notificationRepository;
+    private final MeterRegistry meterRegistry;
+    private final NotificationMetrics notificationMetrics;
+    private final NotificationEncoder notificationEncoder;
+    private final BroadcastMaterializer broadcastMaterializer;
+
+    @Value("${notification.sse.buffer-size:256}")
+    private int bufferSize;
+
+    @Value("${notification.sse.overflow-policy:DROP_OLDEST}")
+    private OverflowPolicy overflowPolicy;
+
+    @Value("${notification.sse.replay.buffer-size:64}")
+    private int replayBufferSize;
+
+    @Value("${notification.sse.replay.retention-ms:60000}")
+    private long replayRetentionMs;
+
+    @Value("${notification.sse.replay.max-backfill:500}")
+    private int replayMaxBackfill;
+
+    @Value("${notification.sse.heartbeat-interval-ms:15000}")
+    private long heartbeatIntervalMs;
+
+    @Value("${notification.sse.idle-timeout-ms:45000}")
+    private long idleTimeoutMs;
+
+    @Value("${notification.sse.shutdown-timeout-ms:5000}")
+    private long shutdownTimeoutMs;
+
+    @Autowired
+    public SSEService(NotificationRepository notificationRepository, MeterRegistry meterRegistry, NotificationMetrics notificationMetrics,
+                      @Value("${notification.sse.shards:0}") int shardCount,
+                      @Value("${notification.sse.shard-queue-size:10000}") int shardQueueSize,
+                      @Value("${notification.sse.shard-offer-timeout-ms:100}") long shardOfferTimeoutMs,
+                      NotificationEncoder notificationEncoder, BroadcastMaterializer broadcastMaterializer) {
+        this.notificationRepository = notificationRepository;
+        this.meterRegistry = meterRegistry;
+        this.notificationMetrics = notificationMetrics;
+        this.notificationEncoder = notificationEncoder;
+        this.broadcastMaterializer = broadcastMaterializer;
+        this.shards = new SSEShard[shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors()];
+        for (int index = 0; index < shards.length; index++) {
+            shards[index] = new SSEShard(index, shardQueueSize, shardOfferTimeoutMs);
+        }
+        Gauge.builder("notification.sse.users", shards,
+                        registry -> Arrays.stream(registry).mapToInt(shard -> shard.getUserConnections().size()).sum())
+                .description("Users with at least one open SSE connection on this node")
+                .register(meterRegistry);
+        Gauge.builder("notification.sse.connections", shards,
+                        registry -> Arrays.stream(registry)
+                                .flatMap(shard -> shard.getUserConnections().values().stream())
+                                .mapToInt(List::size)
+                                .sum())
+                .description("Open SSE connections on this node")
+                .register(meterRegistry);
+        Gauge.builder("notification.sse.buffered", shards,
+                        registry -> Arrays.stream(registry)
+                                .flatMap(shard -> shard.getUserConnections().values().stream())
+                                .flatMap(List::stream)
+                                .mapToInt(SSEConnection::getPending)
+                                .sum())
+                .description("Notifications waiting in the SSE connection buffers of this node")
+                .register(meterRegistry);
+        Gauge.builder("notification.sse.delivery.queued", shards,
+                        registry -> Arrays.stream(registry).mapToInt(SSEShard::getQueued).sum())
+                .description("Notifications waiting in the delivery queues of the SSE shards of this node")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get the shard of a user.
      *
      * @param userId The user id.
-     * @return The sink to send notifications to the user.
+     * @return The shard holding the connections of the user.
      */
-    public Sinks.Many<NotificationDTO> registerUser(UUID userId) {
-        if (!userSinks.containsKey(userId)) {
-            logger.info("Registering user {}", userId);
-            return userSinks.computeIfAbsent(userId, id -> Sinks.many().multicast().onBackpressureBuffer());
-        } else {
-            logger.info("User {} is already registered, returning existing sink", userId);
-            return userSinks.get(userId);
+    private SSEShard shard(UUID userId) {
+        int hash = userId.hashCode();
+        return shards[Math.floorMod(hash ^ (hash >>> 16), shards.length)];
+    }
+
+    /**
+     * Stop the delivery threads of the shards once they have run their queued deliveries, and fail the broadcasts
+     * still waiting after the timeout.
+     */
+    @PreDestroy
+    public void shutdown() {
+        for (SSEShard shard : shards) {
+            shard.shutdown();
+        }
+        for (SSEShard shard : shards) {
+            shard.awaitTermination(shutdownTimeoutMs);
         }
     }
 
     /**
-     * Unregister a user from the SSE service.
+     * Register a new connection of a user to the SSE service.
+     * Each connection has its own sink, so closing one tab or device does not affect the other connections
+     * of the user. The user is removed from the registry when its last connection is closed.
+     * <p>
+     * If the client gives the id of the last notification it received, the notifications sent after it are
+     * replayed first, from the replay buffer of the user or from the database if the buffer does not reach back
+     * far enough. The connection is registered before the replay is computed so nothing is lost in between.
+     * <p>
+     * Heartbeat comments are merged into the stream so that dead connections fail on write, and a connection
+     * whose client stops consuming events is closed by {@link #reapIdleConnections()}.
      *
-     * @param userId The user id.
+     * @param userId      The user id.
+     * @param lastEventId The id of the last notification received by the client, null for a new stream.
+     * @param cbor        True to send the notifications in Base64 CBOR, false to send them in JSON.
+     * @return The flux of server sent events sent to the connection, with the encoded notifications as data.
+     */
+    public Flux<ServerSentEvent<String>> registerUser(UUID userId, String lastEventId, boolean cbor) {
+        return Flux.defer(() -> {
+            SSEShard shard = shard(userId);
+            SSEConnection connection = new SSEConnection(bufferSize);
+            addConnection(shard, userId, connection);
+            ReplayBuffer replayBuffer = shard.getReplayBuffers().computeIfAbsent(userId, id -> new ReplayBuffer(replayBufferSize));
+            Flux<SSEFrame> frames = applyOverflowPolicy(connection, userId);
+
+            if (lastEventId != null) {
+                List<SSEFrame> missed = replayBuffer.after(lastEventId);
+                Flux<SSEFrame> replay = missed != null
+                        ? Flux.fromIterable(missed)
+                        : replayFromDatabase(userId, lastEventId);
+                Set<String> replayed = ConcurrentHashMap.newKeySet();
+                frames = Flux.concat(
+                        replay.doOnNext(frame -> replayed.add(frame.getNotification().getId())),
+                        frames.filter(frame -> frame.getNotification().isSummary() || !replayed.contains(frame.getNotification().getId())));
+            }
+
+            return Flux.merge(1, frames.map(frame -> toEvent(frame, cbor)), heartbeats())
+                    .takeUntilOther(connection.onClose())
+                    .doOnNext(event -> connection.touch())
+                    .doFinally(signal -> removeConnection(shard, userId, connection));
+        });
+    }
+
+    /**
+     * Build the server sent event of a notification.
+     * Each event carries the notification id so the client can resume from it.
+     * Summaries of dropped notifications are sent as "summary" events.
+     * The data is the shared encoded data of the frame, written as is by the SSE writer.
+     *
+     * @param frame The frame of the notification.
+     * @param cbor  True for the Base64 CBOR data, false for the JSON data.
+     * @return The server sent event.
+     */
+    private ServerSentEvent<String> toEvent(SSEFrame frame, boolean cbor) {
+        String data = frame.getData(cbor);
+        if (frame.getNotification().isSummary()) {
+            return ServerSentEvent.builder(data).event("summary").build();
+        }
+        return ServerSentEvent.builder(data).id(frame.getNotification().getId()).build();
+    }
+
+    /**
+     * Heartbeat comments, dropped rather than buffered while the client is not consuming.
+     *
+     * @return The flux of heartbeat comments.
+     */
+    private Flux<ServerSentEvent<String>> heartbeats() {
+        return Flux.interval(Duration.ofMillis(heartbeatIntervalMs))
+                .onBackpressureDrop()
+                .map(tick -> ServerSentEvent.<String>builder().comment("heartbeat").build());
+    }
+
+    /**
+     * Get the notifications of a user stored after the notification with the given id, in the (date, id) order,
+     * so that the notifications with the same date as the given one are replayed too.
+     * The pending broadcasts of the user are written in its inbox first, so that a client whose last event was a
+     * broadcast is found, and the broadcasts it missed are replayed.
+     *
+     * @param userId      The user id.
+     * @param lastEventId The id of the last notification received by the client.
+     * @return The notifications stored after it, empty if it does not exist or belongs to another user.
+     */
+    private Flux<SSEFrame> replayFromDatabase(UUID userId, String lastEventId) {
+        logger.info("Replaying notifications of user {} after {} from the database", userId, lastEventId);
+        return broadcastMaterializer.materialize(userId.toString())
+                .then(notificationRepository.findById(lastEventId))
+                .filter(notification -> notification.getReceiverId().equals(userId.toString()))
+                .flatMapMany(notification -> notificationRepository.findByReceiverIdAfter(notification.getReceiverId(),
+                        notification.getDate(), notification.getId(), PageRequest.of(0, replayMaxBackfill)))
+                .map(notification -> frame(new NotificationDTO(notification)));
+    }
+
+    /**
+     * Build the frame of a notification, encoded with the encoder of this service.
+     *
+     * @param notificationDTO The notification.
+     * @return The frame of the notification.
+     */
+    private SSEFrame frame(NotificationDTO notificationDTO) {
+        return new SSEFrame(notificationDTO, notificationEncoder::toJson, notificationEncoder::toBase64Cbor);
+    }
+
+    /**
+     * Add a connection to the connections of a user.
+     *
+     * @param shard      The shard of the user.
+     * @param userId     The user id.
+     * @param connection The connection.
+     */
+    private void addConnection(SSEShard shard, UUID userId, SSEConnection connection) {
+        List<SSEConnection> connections = shard.getUserConnections().compute(userId, (id, existing) -> {
+            if (existing == null) {
+                return List.of(connection);
+            }
+            List<SSEConnection> updated = new ArrayList<>(existing.size() + 1);
+            updated.addAll(existing);
+            updated.add(connection);
+            return List.copyOf(updated);
+        });
+        logger.info("Registered connection of user {}, {} open connection(s)", userId, connections.size());
+    }
+
+    /**
+     * Remove a connection from the connections of a user, and the user itself if it was its last connection.
+     *
+     * @param shard      The shard of the user.
+     * @param userId     The user id.
+     * @param connection The connection.
+     */
+    private void removeConnection(SSEShard shard, UUID userId, SSEConnection connection) {
+        List<SSEConnection> connections = shard.getUserConnections().computeIfPresent(userId, (id, existing) -> {
+            List<SSEConnection> remaining = existing.stream()
+                    .filter(other -> other != connection)
+                    .toList();
+            return remaining.isEmpty() ? null : remaining;
+        });
+        logger.info("Unregistered connection of user {}, {} open connection(s)", userId, connections == null ? 0 : connections.size());
+        if (connections == null) {
+            Schedulers.parallel().schedule(() -> shard.getReplayBuffers().computeIfPresent(userId,
+                    (id, replayBuffer) -> shard.getUserConnections().containsKey(id) ? replayBuffer : null), replayRetentionMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Close the connections whose client has not consumed any event, heartbeats included, for longer than the
+     * idle timeout. These are dead or stalled connections that would otherwise stay in the registry.
+     */
+    @Scheduled(fixedDelayString = "${notification.sse.reaper-interval-ms:30000}")
+    public void reapIdleConnections() {
+        long idleSince = System.currentTimeMillis() - idleTimeoutMs;
+        for (SSEShard shard : shards) {
+            shard.getUserConnections().forEach((userId, connections) -> connections.stream()
+                    .filter(connection -> connection.getLastActivity() < idleSince)
+                    .forEach(connection -> {
+                        logger.info("Closing idle connection of user {}", userId);
+                        connection.close();
+                    }));
+        }
+    }
+
+    /**
+     * Remove deleted notifications from the replay buffer of a user on this node, so that they are not replayed
+     * to a reconnecting client.
+     *
+     * @param userId  The user id.
+     * @param deleted The predicate of the deleted notifications.
      */
-    public void unregisterUser(UUID userId) {
-        Optional.ofNullable(userSinks.remove(userId))
-                .ifPresent(Sinks.Many::tryEmitComplete);
+    public void removeFromReplay(UUID userId, Predicate<NotificationDTO> deleted) {
+        Optional.ofNullable(shard(userId).getReplayBuffers().get(userId)).ifPresent(replayBuffer -> replayBuffer.removeIf(deleted));
     }
 
     /**
@@ -53,11 +338,238 @@ public class SSEService {
      * @param notification The notification to send.
      */
     public void sendNotificationToOneUser(Notification notification) {
-        UUID receiverId = UUID.fromString(notification.getReceiverId());
-        Optional.ofNullable(userSinks.get(receiverId)).ifPresent(sink -> {
-            logger.info("Sending notification to user {}", receiverId);
-            NotificationDTO notificationDTO = new NotificationDTO(notification);
-            sink.tryEmitNext(notificationDTO);
-        });
+        sendNotificationToOneUser(new NotificationDTO(notification));
+    }
+
+    /**
+     * Send a notification to the concerned user if they are connected to this node.
+     * The notification is queued on the shard of the user with its frame and delivered by its thread. It is
+     * dropped from the live stream if the queue of the shard stays full. Every node receives every notification,
+     * so a user with neither a connection nor a replay buffer on this node is skipped without queuing anything.
+     *
+     * @param notificationDTO The notification to send.
+     */
+    public void sendNotificationToOneUser(NotificationDTO notificationDTO) {
+        sendNotificationToOneUser(notificationDTO, System.currentTimeMillis());
+    }
+
+    /**
+     * Send a notification to the concerned user if they are connected to this node, and record its delivery
+     * latency once its receiver has been given its frame on the thread of its shard.
+     *
+     * @param notificationDTO The notification to send.
+     * @param publishedAt     The time the notification was published on the bus, in milliseconds.
+     */
+    public void sendNotificationToOneUser(NotificationDTO notificationDTO, long publishedAt) {
+        UUID receiverId = notificationDTO.getReceiverId();
+        SSEShard shard = shard(receiverId);
+        if (!shard.getUserConnections().containsKey(receiverId) && !shard.getReplayBuffers().containsKey(receiverId)) {
+            return;
+        }
+        SSEFrame frame = frame(notificationDTO);
+        try {
+            shard.execute(() -> deliver(shard, frame, publishedAt));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Dropped notification {} for user {}: {}", notificationDTO.getId(), notificationDTO.getReceiverId(), e.getMessage());
+            meterRegistry.counter("notification.sse.delivery.dropped").increment();
+        }
+    }
+
+    /**
+     * Deliver a notification to the replay buffer and the connections of its receiver, on the thread of its shard.
+     *
+     * @param shard       The shard of the receiver.
+     * @param frame       The frame of the notification.
+     * @param publishedAt The time the notification was published on the bus, in milliseconds.
+     */
+    private void deliver(SSEShard shard, SSEFrame frame, long publishedAt) {
+        UUID receiverId = frame.getNotification().getReceiverId();
+        ReplayBuffer replayBuffer = shard.getReplayBuffers().get(receiverId);
+        if (replayBuffer != null) {
+            replayBuffer.add(frame);
+        }
+        List<SSEConnection> connections = shard.getUserConnections().get(receiverId);
+        if (connections != null) {
+            logger.info("Sending notification to user {} on {} connection(s)", receiverId, connections.size());
+            emitToConnections(connections, frame);
+        }
+        if (replayBuffer != null || connections != null) {
+            notificationMetrics.recordDelivered(frame.getNotification().getCategory(), publishedAt);
+        }
+    }
+
+    /**
+     * Send a broadcast to its receivers connected to this node, or recently disconnected from it, with one pass
+     * over each shard, every shard sweeping its users on its own thread. Each receiver gets its own notification,
+     * with the id of the notification written later in its inbox. A broadcast to every user iterates over the
+     * users of this node, a broadcast to a list of users iterates over the list.
+     *
+     * @param broadcast The broadcast to send.
+     * @return The number of users the broadcast was sent to, once every shard has been swept, failed if a shard
+     * rejected its sweep or stopped before running it.
+     */
+    public CompletableFuture<Integer> sendBroadcast(Broadcast broadcast) {
+        return sendBroadcast(broadcast, System.currentTimeMillis());
+    }
+
+    /**
+     * Send a broadcast to its receivers on this node, and record its delivery latency once every shard has been
+     * swept, if it was sent to at least one user.
+     *
+     * @param broadcast   The broadcast to send.
+     * @param publishedAt The time the broadcast was published on the bus, in milliseconds.
+     * @return The number of users the broadcast was sent to, once every shard has been swept.
+     */
+    public CompletableFuture<Integer> sendBroadcast(Broadcast broadcast, long publishedAt) {
+        List<CompletableFuture<Integer>> sweeps = new ArrayList<>(shards.length);
+        if (broadcast.getReceiverIds() == null) {
+            for (SSEShard shard : shards) {
+                sweeps.add(shard.submit(() -> sendBroadcast(broadcast, shard, shard.getReplayBuffers().keySet())));
+            }
+        } else {
+            Map<SSEShard, List<UUID>> receivers = new HashMap<>();
+            for (String receiverId : broadcast.getReceiverIds()) {
+                UUID userId = UUID.fromString(receiverId);
+                receivers.computeIfAbsent(shard(userId), shard -> new ArrayList<>()).add(userId);
+            }
+            receivers.forEach((shard, userIds) -> sweeps.add(shard.submit(() -> sendBroadcast(broadcast, shard, userIds))));
+        }
+        return CompletableFuture.allOf(sweeps.toArray(CompletableFuture[]::new))
+                .thenApply(done -> {
+                    int users = sweeps.stream().mapToInt(CompletableFuture::join).sum();
+                    logger.info("Sent broadcast {} to {} user(s)", broadcast.getId(), users);
+                    if (users > 0) {
+                        notificationMetrics.recordDelivered(broadcast.getCategory(), publishedAt);
+                    }
+                    return users;
+                });
+    }
+
+    /**
+     * Send a broadcast to the users of one shard, on the thread of the shard.
+     *
+     * @param broadcast The broadcast.
+     * @param shard     The shard.
+     * @param userIds   The ids of the receivers in this shard.
+     * @return The number of users the broadcast was sent to.
+     */
+    private int sendBroadcast(Broadcast broadcast, SSEShard shard, Collection<UUID> userIds) {
+        int users = 0;
+        for (UUID userId : userIds) {
+            ReplayBuffer replayBuffer = shard.getReplayBuffers().get(userId);
+            if (replayBuffer == null) {
+                continue;
+            }
+            SSEFrame frame = frame(new NotificationDTO(broadcast.toNotification(userId.toString())));
+            replayBuffer.add(frame);
+            List<SSEConnection> connections = shard.getUserConnections().get(userId);
+            if (connections != null) {
+                emitToConnections(connections, frame);
+            }
+            users++;
+        }
+        return users;
+    }
+
+    /**
+     * Emit a notification to every connection of its receiver.
+     *
+     * @param connections The connections of the receiver.
+     * @param frame       The frame of the notification.
+     */
+    private void emitToConnections(List<SSEConnection> connections, SSEFrame frame) {
+        for (SSEConnection connection : connections) {
+            connection.addPending();
+            Sinks.EmitResult result = emit(connection.getSink(), frame);
+            if (result.isFailure()) {
+                connection.removePending();
+                logger.warn("Could not send notification {} to user {}: {}", frame.getNotification().getId(), frame.getNotification().getReceiverId(), result);
+                meterRegistry.counter("notification.sse.emit.failures", "result", result.name()).increment();
+            }
+        }
+    }
+
+    /**
+     * Emit a notification to a sink, retrying while another thread is emitting to the same sink.
+     *
+     * @param sink  The sink.
+     * @param frame The frame of the notification.
+     * @return The result of the last emission attempt.
+     */
+    private Sinks.EmitResult emit(Sinks.Many<SSEFrame> sink, SSEFrame frame) {
+        Sinks.EmitResult result = sink.tryEmitNext(frame);
+        for (int attempt = 1; result == Sinks.EmitResult.FAIL_NON_SERIALIZED && attempt < MAX_EMIT_ATTEMPTS; attempt++) {
+            Thread.onSpinWait();
+            result = sink.tryEmitNext(frame);
+        }
+        return result;
+    }
+
+    /**
+     * Bound the buffer of one subscriber and apply the configured overflow policy when the client is too slow.
+     * A frame stops being pending for the connection when it leaves the buffer or is dropped from it.
+     *
+     * @param connection The connection.
+     * @param userId     The user id.
+     * @return The bounded flux of frames.
+     */
+    private Flux<SSEFrame> applyOverflowPolicy(SSEConnection connection, UUID userId) {
+        Flux<SSEFrame> notifications = connection.getSink().asFlux();
+        return switch (overflowPolicy) {
+            case DROP_OLDEST -> notifications.onBackpressureBuffer(bufferSize,
+                            dropped -> onOverflow(connection, userId), BufferOverflowStrategy.DROP_OLDEST)
+                    .doOnNext(frame -> connection.removePending());
+            case DROP_NEWEST -> notifications.onBackpressureBuffer(bufferSize,
+                            dropped -> onOverflow(connection, userId), BufferOverflowStrategy.DROP_LATEST)
+                    .doOnNext(frame -> connection.removePending());
+            case COALESCE -> coalesce(notifications, connection, userId);
+        };
+    }
+
+    /**
+     * Drop the notifications that do not fit in the buffer and send a single summary with their count instead.
+     * The summary is sent after the next notification, or on the next heartbeat tick if no notification follows,
+     * so the client learns about the dropped notifications even when the burst was the last one.
+     *
+     * @param notifications The frames of the notifications sent to the user.
+     * @param connection    The connection.
+     * @param userId        The user id.
+     * @return The bounded flux of frames.
+     */
+    private Flux<SSEFrame> coalesce(Flux<SSEFrame> notifications, SSEConnection connection, UUID userId) {
+        AtomicInteger coalesced = new AtomicInteger();
+        Flux<SSEFrame> bounded = notifications
+                .onBackpressureBuffer(bufferSize, dropped -> {
+                    coalesced.incrementAndGet();
+                    onOverflow(connection, userId);
+                }, BufferOverflowStrategy.DROP_LATEST)
+                .doOnNext(frame -> connection.removePending())
+                .flatMapIterable(notification -> {
+                    int count = coalesced.getAndSet(0);
+                    return count == 0
+                            ? List.of(notification)
+                            : List.of(notification, frame(NotificationDTO.summary(userId, count)));
+                }, 1);
+        Flux<SSEFrame> pendingSummaries = Flux.interval(Duration.ofMillis(heartbeatIntervalMs))
+                .onBackpressureDrop()
+                .handle((tick, sink) -> {
+                    int count = coalesced.getAndSet(0);
+                    if (count > 0) {
+                        sink.next(frame(NotificationDTO.summary(userId, count)));
+                    }
+                });
+        return Flux.merge(1, bounded, pendingSummaries);
+    }
+
+    /**
+     * Record a notification dropped because the buffer of a subscriber was full.
+     *
+     * @param connection The connection.
+     * @param userId     The user id.
+     */
+    private void onOverflow(SSEConnection connection, UUID userId) {
+        connection.removePending();
+        logger.warn("SSE buffer of user {} is full, applying {}", userId, overflowPolicy);
+        meterRegistry.counter("notification.sse.dropped", "policy", overflowPolicy.name()).increment();
     }
 }
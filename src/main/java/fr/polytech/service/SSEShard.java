@@ -0,0 +1,146 @@
+package fr.polytech.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * One shard of the SSE registry: the connections and replay buffers of the users whose id hashes to it, and
+ * the single thread delivering their notifications, in order, from a bounded queue.
+ * <p>
+ * Every delivery runs on the thread of the shard, so the emissions to a sink are serialized and the notifications
+ * of a user keep their order. When the queue is full, the caller waits for a free slot for a bounded time, then
+ * the delivery is rejected rather than run on the caller thread.
+ */
+class SSEShard {
+
+    /**
+     * Map a user id to its open connections. The lists are immutable and replaced atomically,
+     * so delivery can iterate over them without locking.
+     */
+    private final Map<UUID, List<SSEConnection>> userConnections = new ConcurrentHashMap<>();
+
+    /**
+     * Map a user id to the last notifications sent to it. A buffer is kept for a while after the last
+     * connection of the user is closed, so that a reconnecting client can resume where it stopped.
+     */
+    private final Map<UUID, ReplayBuffer> replayBuffers = new ConcurrentHashMap<>();
+
+    /**
+     * Results of the tasks submitted to the shard and not completed yet, failed if the shard stops before running them.
+     */
+    private final Set<CompletableFuture<?>> pendingResults = ConcurrentHashMap.newKeySet();
+
+    private final int index;
+    private final long offerTimeoutMs;
+    private final ThreadPoolExecutor executor;
+
+    SSEShard(int index, int queueSize, long offerTimeoutMs) {
+        this.index = index;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "sse-delivery-" + index);
+            thread.setDaemon(true);
+            return thread;
+        }, this::offer);
+    }
+
+    /**
+     * Wait for a free slot in the queue when it is full.
+     *
+     * @param task     The rejected task.
+     * @param executor The executor of the shard.
+     * @throws RejectedExecutionException If the shard is stopped or the queue is still full after the timeout.
+     */
+    private void offer(Runnable task, ThreadPoolExecutor executor) {
+        try {
+            if (!executor.isShutdown() && executor.getQueue().offer(task, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw new RejectedExecutionException("The delivery queue of SSE shard " + index + " is full or stopped");
+    }
+
+    Map<UUID, List<SSEConnection>> getUserConnections() {
+        return userConnections;
+    }
+
+    Map<UUID, ReplayBuffer> getReplayBuffers() {
+        return replayBuffers;
+    }
+
+    /**
+     * Run a delivery on the thread of the shard.
+     *
+     * @param delivery The delivery.
+     * @throws RejectedExecutionException If the shard is stopped or its queue stayed full.
+     */
+    void execute(Runnable delivery) {
+        executor.execute(delivery);
+    }
+
+    /**
+     * Run a task on the thread of the shard and get its result.
+     *
+     * @param task The task.
+     * @param <T>  The type of the result.
+     * @return The result, failed if the task is rejected or the shard stops before running it.
+     */
+    <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        pendingResults.add(result);
+        result.whenComplete((value, throwable) -> pendingResults.remove(result));
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(task.get());
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of deliveries waiting in the queue of the shard.
+     */
+    int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stop accepting tasks and let the thread run the queued ones.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Wait for the queued tasks, then drop those still queued and fail their results.
+     *
+     * @param timeoutMs The time to wait for the queued tasks, in milliseconds.
+     */
+    void awaitTermination(long timeoutMs) {
+        try {
+            executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdownNow();
+        RejectedExecutionException stopped = new RejectedExecutionException("SSE shard " + index + " stopped");
+        pendingResults.forEach(result -> result.completeExceptionally(stopped));
+    }
+}
@@ -0,0 +1,61 @@
+package fr.polytech.service;
+
+import fr.polytech.model.SchedulerLock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Leases stored in Mongo electing the node running a periodic task.
+ * A lease expires on its own, so a node stopping in the middle of a task does not block the other nodes
+ * for longer than the lease.
+ */
+@Service
+public class SchedulerLockService {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final String owner = UUID.randomUUID().toString();
+
+    @Autowired
+    public SchedulerLockService(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    /**
+     * Take the lease of a task unless another node holds it.
+     *
+     * @param name  The task name.
+     * @param lease The time after which the lease is released if this node does not release it.
+     * @return True if this node holds the lease.
+     */
+    public Mono<Boolean> tryAcquire(String name, Duration lease) {
+        Date now = new Date();
+        Query free = Query.query(Criteria.where("_id").is(name).orOperator(
+                Criteria.where("lockedUntil").lte(now), Criteria.where("owner").is(owner)));
+        Update take = new Update().set("owner", owner).set("lockedUntil", new Date(now.getTime() + lease.toMillis()));
+        return reactiveMongoTemplate.upsert(free, take, SchedulerLock.class)
+                .thenReturn(true)
+                .onErrorReturn(DuplicateKeyException.class, false);
+    }
+
+    /**
+     * Release the lease of a task held by this node.
+     *
+     * @param name The task name.
+     * @return Completes once the lease is released.
+     */
+    public Mono<Void> release(String name) {
+        return reactiveMongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(name).and("owner").is(owner)),
+                        Update.update("lockedUntil", new Date()), SchedulerLock.class)
+                .then();
+    }
+}
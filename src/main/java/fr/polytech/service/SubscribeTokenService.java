@@ -0,0 +1,181 @@
+package fr.polytech.service;
+
+import fr.polytech.model.SubscribeToken;
+import fr.polytech.repository.SubscribeTokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Registry of the unique tokens used to subscribe to the SSE stream.
+ * The tokens are stored in Mongo so that a token minted on one node can be used on any other node.
+ * <p>
+ * Tokens that are never used expire after a configurable time to live. A used token stays valid while its stream
+ * is open and for a grace period after it closes, so that the browser can reconnect to the same URL with the
+ * Last-Event-ID header and receive the notifications it missed.
+ */
+@Service
+public class SubscribeTokenService {
+
+    /**
+     * Initialize logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SubscribeTokenService.class);
+
+    private static final String EXPIRY_INDEX = "expires_at_ttl_idx";
+
+    /**
+     * Index on the creation date used before the tokens had an expiry date, removed at startup.
+     */
+    private static final String LEGACY_EXPIRY_INDEX = "created_at_ttl_idx";
+
+    private final SubscribeTokenRepository subscribeTokenRepository;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Value("${notification.sse.token-ttl-ms:60000}")
+    private long tokenTtlMs;
+
+    @Value("${notification.sse.token-reconnect-grace-ms:300000}")
+    private long reconnectGraceMs;
+
+    @Autowired
+    public SubscribeTokenService(SubscribeTokenRepository subscribeTokenRepository, ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.subscribeTokenRepository = subscribeTokenRepository;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    /**
+     * Create the TTL index removing the tokens once their expiry date is passed.
+     * The former index on the creation date is dropped, since it would remove the tokens of open streams.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createExpiryIndex() {
+        reactiveMongoTemplate.indexOps(SubscribeToken.class)
+                .dropIndex(LEGACY_EXPIRY_INDEX)
+                .onErrorResume(throwable -> Mono.empty())
+                .then(reactiveMongoTemplate.indexOps(SubscribeToken.class)
+                        .ensureIndex(new Index().on("expiresAt", Sort.Direction.ASC).named(EXPIRY_INDEX)
+                                .expire(Duration.ZERO)))
+                .subscribe(index -> logger.info("Subscribe token expiry index {} ready", index),
+                        throwable -> logger.error("Error while creating the subscribe token expiry index", throwable));
+    }
+
+    /**
+     * Create and register a unique token for the user.
+     *
+     * @param userId The user id.
+     * @return The unique token.
+     */
+    public Mono<String> createToken(UUID userId) {
+        long now = System.currentTimeMillis();
+        SubscribeToken subscribeToken = new SubscribeToken(generateUniqueToken(userId), userId.toString(), new Date(now),
+                new Date(now + tokenTtlMs));
+        return subscribeTokenRepository.save(subscribeToken)
+                .map(SubscribeToken::getToken);
+    }
+
+    /**
+     * Get the user a token was created for.
+     * Expired tokens are ignored even if the TTL monitor of Mongo has not removed them yet.
+     *
+     * @param uniqueToken The unique token.
+     * @return The user id, empty if the token is unknown or expired.
+     */
+    public Mono<UUID> getUserId(String uniqueToken) {
+        return subscribeTokenRepository.findById(uniqueToken)
+                .filter(subscribeToken -> expiresAt(subscribeToken) > System.currentTimeMillis())
+                .map(subscribeToken -> UUID.fromString(subscribeToken.getUserId()));
+    }
+
+    /**
+     * Keep a token valid while its stream is open: its expiry is pushed to the end of the reconnect grace period
+     * at once, then every half grace period until the returned handle is disposed.
+     *
+     * @param uniqueToken The unique token.
+     * @return The handle stopping the refreshes.
+     */
+    public Disposable keepAlive(String uniqueToken) {
+        return Flux.interval(Duration.ZERO, Duration.ofMillis(Math.max(1, reconnectGraceMs / 2)))
+                .onBackpressureDrop()
+                .concatMap(tick -> extend(uniqueToken))
+                .subscribe(null, throwable -> logger.error("Error while refreshing subscribe token", throwable));
+    }
+
+    /**
+     * Start the reconnect grace period of a token whose stream has closed.
+     *
+     * @param uniqueToken The unique token.
+     */
+    public void release(String uniqueToken) {
+        extend(uniqueToken)
+                .subscribe(null, throwable -> logger.error("Error while releasing subscribe token", throwable));
+    }
+
+    /**
+     * Set the expiry of a token to the end of the reconnect grace period.
+     *
+     * @param uniqueToken The unique token.
+     * @return Completes once the token is updated.
+     */
+    private Mono<Void> extend(String uniqueToken) {
+        return reactiveMongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(uniqueToken)),
+                        Update.update("expiresAt", new Date(System.currentTimeMillis() + reconnectGraceMs)), SubscribeToken.class)
+                .then();
+    }
+
+    /**
+     * Expiry of a token, computed from its creation date for the tokens created before they had one.
+     *
+     * @param subscribeToken The token.
+     * @return The expiry date, in milliseconds.
+     */
+    private long expiresAt(SubscribeToken subscribeToken) {
+        return subscribeToken.getExpiresAt() != null
+                ? subscribeToken.getExpiresAt().getTime()
+                : subscribeToken.getCreatedAt().getTime() + tokenTtlMs;
+    }
+
+    /**
+     * Generate a unique token for the user. This token is a hash of the user id and a random string.
+     * This token is used to identify the user in the SSE stream.
+     *
+     * @param userId The user id.
+     * @return The unique token.
+     */
+    String generateUniqueToken(UUID userId) {
+        String toHash = userId.toString() + "-" + UUID.randomUUID();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(toHash.getBytes());
+            StringBuilder hexString = new StringBuilder();
+            for (byte b : hash) {
+                String hex = Integer.toHexString(0xff & b);
+                if (hex.length() == 1) hexString.append('0');
+                hexString.append(hex);
+            }
+            return hexString.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // If the algorithm does not exist, we return the string as is.
+            return toHash;
+        }
+    }
+}
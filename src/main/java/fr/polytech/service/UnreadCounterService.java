@@ -0,0 +1,183 @@
+package fr.polytech.service;
+
+import fr.polytech.repository.NotificationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user unread notification counters kept in memory.
+ * A counter is loaded from Mongo on first read, then maintained as notifications are delivered, read and deleted.
+ * The counter of a user is dropped on every node when notifications of the user are read or deleted through any
+ * node, and counters are periodically dropped so the next read reconciles them against Mongo.
+ * <p>
+ * A counter changed while it is being loaded is not kept, since the loaded count may or may not include the change,
+ * and the next read loads it again. Concurrent reads of a user share the same load.
+ */
+@Service
+public class UnreadCounterService {
+
+    /**
+     * Initialize logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(UnreadCounterService.class);
+
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Counters being loaded from Mongo.
+     */
+    private final Map<String, Load> loads = new ConcurrentHashMap<>();
+
+    private final NotificationRepository notificationRepository;
+
+    @Value("${notification.unread.max-users:100000}")
+    private int maxUsers;
+
+    @Autowired
+    public UnreadCounterService(NotificationRepository notificationRepository) {
+        this.notificationRepository = notificationRepository;
+    }
+
+    /**
+     * Get the number of unread notifications of a user.
+     *
+     * @param userId The user id.
+     * @return The number of unread notifications.
+     */
+    public Mono<Long> getUnreadCount(String userId) {
+        AtomicLong counter = counters.get(userId);
+        if (counter != null) {
+            return Mono.just(counter.get());
+        }
+        return loads.computeIfAbsent(userId, this::load).getCount();
+    }
+
+    /**
+     * Load the counter of a user from Mongo, and keep it unless it has changed in the meantime.
+     *
+     * @param userId The user id.
+     * @return The load, removed from the loads once done.
+     */
+    private Load load(String userId) {
+        Load load = new Load();
+        load.setCount(notificationRepository.countUnreadByReceiverId(userId)
+                .doOnNext(count -> {
+                    if (load.isChanged() || counters.size() >= maxUsers) {
+                        return;
+                    }
+                    AtomicLong counter = counters.computeIfAbsent(userId, id -> new AtomicLong(count));
+                    if (load.isChanged()) {
+                        // Changed between the check and the insertion, the change may be missing from the count.
+                        counters.remove(userId, counter);
+                    }
+                })
+                .doFinally(signal -> loads.remove(userId, load))
+                .cache());
+        return load;
+    }
+
+    /**
+     * Record a change of the counter of a user, so that a load in progress does not keep a count missing it.
+     * The load is marked before the counter is read, so either the change is applied to the kept counter or the
+     * loaded count is discarded.
+     *
+     * @param userId The user id.
+     */
+    private void markChanged(String userId) {
+        Load load = loads.get(userId);
+        if (load != null) {
+            load.markChanged();
+        }
+    }
+
+    /**
+     * Record a new unread notification for a user.
+     *
+     * @param userId The user id.
+     */
+    public void increment(String userId) {
+        markChanged(userId);
+        AtomicLong counter = counters.get(userId);
+        if (counter != null) {
+            counter.incrementAndGet();
+        }
+    }
+
+    /**
+     * Record a new unread notification for every user, after a broadcast to every user.
+     */
+    public void incrementAll() {
+        loads.values().forEach(Load::markChanged);
+        counters.values().forEach(AtomicLong::incrementAndGet);
+    }
+
+    /**
+     * Record that unread notifications of a user have been read or deleted.
+     *
+     * @param userId The user id.
+     * @param count  The number of notifications.
+     */
+    public void decrement(String userId, long count) {
+        markChanged(userId);
+        AtomicLong counter = counters.get(userId);
+        if (counter != null && count > 0) {
+            counter.updateAndGet(value -> Math.max(0, value - count));
+        }
+    }
+
+    /**
+     * Drop the counter of a user after a change whose effect on it is unknown, so that its next read is
+     * reconciled against Mongo.
+     *
+     * @param userId The user id.
+     */
+    public void invalidate(String userId) {
+        markChanged(userId);
+        counters.remove(userId);
+    }
+
+    /**
+     * Drop every counter so that the next read of each one is reconciled against Mongo.
+     */
+    @Scheduled(fixedDelayString = "${notification.unread.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        logger.info("Reconciling {} unread counters", counters.size());
+        loads.values().forEach(Load::markChanged);
+        counters.clear();
+    }
+
+    /**
+     * Load of a counter from Mongo, shared by the concurrent reads of its user.
+     */
+    private static class Load {
+
+        private Mono<Long> count;
+
+        private volatile boolean changed;
+
+        Mono<Long> getCount() {
+            return count;
+        }
+
+        void setCount(Mono<Long> count) {
+            this.count = count;
+        }
+
+        boolean isChanged() {
+            return changed;
+        }
+
+        void markChanged() {
+            changed = true;
+        }
+    }
+}